@@ -0,0 +1,26 @@
+package com.hmdp.config;
+
+import com.hmdp.mapper.BlogMapper;
+import com.hmdp.utils.BlogHotRanking;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 热门博客排行：启动时排行不存在则从数据库重建，之后由新增博客、点赞增量维护
+ */
+@Configuration
+public class BlogHotRankingConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "hmdp.blog.hot.rebuild-on-startup", havingValue = "true", matchIfMissing = true)
+    public ApplicationRunner blogHotRankingLoader(BlogHotRanking blogHotRanking, BlogMapper blogMapper) {
+        return args -> {
+            // 排行已存在（其他节点已建立，之后由点赞、新增博客维护）时不重建，滚动重启不会反复重建
+            if (!blogHotRanking.exists()) {
+                blogHotRanking.rebuild(blogMapper);
+            }
+        };
+    }
+}
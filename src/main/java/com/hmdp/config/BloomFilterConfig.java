@@ -0,0 +1,99 @@
+package com.hmdp.config;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.hmdp.mapper.BlogMapper;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.mapper.UserMapper;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.RedisBloomFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.BLOOM_BLOG_KEY;
+import static com.hmdp.utils.RedisConstants.BLOOM_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.BLOOM_USER_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+
+/**
+ * 布隆过滤器配置：商铺、博客、用户 id
+ * 启动时从数据库加载全部 id，新增数据时由对应的 save 写入
+ */
+@Slf4j
+@Configuration
+public class BloomFilterConfig {
+
+    /**
+     * 启动加载时每次查询的 id 个数
+     */
+    private static final int LOAD_BATCH_SIZE = 10000;
+
+    @Value("${hmdp.bloom.expected-insertions:1000000}")
+    private long expectedInsertions;
+
+    @Value("${hmdp.bloom.fpp:0.01}")
+    private double fpp;
+
+    @Bean
+    public RedisBloomFilter shopBloomFilter(StringRedisTemplate stringRedisTemplate, CacheClient cacheClient) {
+        RedisBloomFilter bloomFilter = new RedisBloomFilter(stringRedisTemplate, BLOOM_SHOP_KEY, expectedInsertions, fpp);
+        // 商铺缓存查询前先经过布隆过滤器
+        cacheClient.registerBloomFilter(CACHE_SHOP_KEY, bloomFilter);
+        return bloomFilter;
+    }
+
+    @Bean
+    public RedisBloomFilter blogBloomFilter(StringRedisTemplate stringRedisTemplate) {
+        return new RedisBloomFilter(stringRedisTemplate, BLOOM_BLOG_KEY, expectedInsertions, fpp);
+    }
+
+    @Bean
+    public RedisBloomFilter userBloomFilter(StringRedisTemplate stringRedisTemplate) {
+        return new RedisBloomFilter(stringRedisTemplate, BLOOM_USER_KEY, expectedInsertions, fpp);
+    }
+
+    /**
+     * 启动加载：加载完成之前布隆过滤器放行所有 id（关闭启动加载时一直放行）
+     */
+    @Bean
+    @ConditionalOnProperty(name = "hmdp.bloom.load-on-startup", havingValue = "true", matchIfMissing = true)
+    public ApplicationRunner bloomFilterLoader(@Qualifier("shopBloomFilter") RedisBloomFilter shopBloomFilter, ShopMapper shopMapper,
+                                               @Qualifier("blogBloomFilter") RedisBloomFilter blogBloomFilter, BlogMapper blogMapper,
+                                               @Qualifier("userBloomFilter") RedisBloomFilter userBloomFilter, UserMapper userMapper) {
+        return args -> {
+            load(shopBloomFilter, shopMapper);
+            load(blogBloomFilter, blogMapper);
+            load(userBloomFilter, userMapper);
+        };
+    }
+
+    private <T> void load(RedisBloomFilter bloomFilter, BaseMapper<T> mapper) {
+        // 1、按 id 分批扫描数据库，写入 redis bitmap 和本地镜像
+        long lastId = 0;
+        long count = 0;
+        while (true) {
+            List<Object> ids = mapper.selectObjs(new QueryWrapper<T>()
+                    .select("id")
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + LOAD_BATCH_SIZE));
+            bloomFilter.addAll(ids);
+            count += ids.size();
+            if (ids.size() < LOAD_BATCH_SIZE) {
+                break;
+            }
+            lastId = ((Number) ids.get(ids.size() - 1)).longValue();
+        }
+        // 2、合并其他节点写入 redis 的 id，开始拦截
+        bloomFilter.loadFromRedis();
+        log.info("布隆过滤器加载完成：{}，id 数量：{}", bloomFilter.getKey(), count);
+    }
+}
@@ -0,0 +1,63 @@
+package com.hmdp.config;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.utils.CacheClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+
+/**
+ * 缓存预热：启动时把全部商铺以逻辑过期写入 redis
+ * 逻辑过期时间在 hmdp.cache.warm-up.ttl-minutes 的基础上随机增加 0 ~ hmdp.cache.ttl-jitter-ratio 倍，错开过期，避免同时重建
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "hmdp.cache.warm-up.enabled", havingValue = "true")
+public class CacheWarmUpConfig {
+
+    @Value("${hmdp.cache.warm-up.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${hmdp.cache.warm-up.ttl-minutes:30}")
+    private long ttlMinutes;
+
+    @Bean
+    public ApplicationRunner shopCacheWarmUp(ShopMapper shopMapper, CacheClient cacheClient) {
+        return args -> {
+            long lastId = 0;
+            long count = 0;
+            while (true) {
+                // 1、按 id 分批查询商铺
+                List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("limit " + batchSize));
+                if (shops.isEmpty()) {
+                    break;
+                }
+                // 2、一次管道批量写入
+                Map<Long, Shop> values = new LinkedHashMap<>(shops.size() * 2);
+                shops.forEach(shop -> values.put(shop.getId(), shop));
+                cacheClient.setBatchWithLogicalExpire(CACHE_SHOP_KEY, values, ttlMinutes, TimeUnit.MINUTES);
+                count += shops.size();
+                if (shops.size() < batchSize) {
+                    break;
+                }
+                lastId = shops.get(shops.size() - 1).getId();
+            }
+            log.info("商铺缓存预热完成，数量：{}", count);
+        };
+    }
+}
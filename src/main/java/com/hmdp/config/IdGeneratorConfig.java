@@ -0,0 +1,143 @@
+package com.hmdp.config;
+
+import cn.hutool.core.util.BooleanUtil;
+import com.hmdp.utils.IdGenerator;
+import com.hmdp.utils.IdGeneratorRouter;
+import com.hmdp.utils.RedisWorker;
+import com.hmdp.utils.SnowflakeIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.ID_WORKER_KEY;
+import static com.hmdp.utils.RedisConstants.ID_WORKER_SEQ_KEY;
+import static com.hmdp.utils.RedisConstants.ID_WORKER_TTL;
+
+/**
+ * id 生成器配置
+ * hmdp.id.generators.{业务前缀}: redis / snowflake，未配置的前缀使用 redis
+ * 未指定雪花算法机器id时从 redis 租用（id:worker:{n}），只有配置了 snowflake 的前缀时才租用
+ */
+@Slf4j
+@Configuration
+public class IdGeneratorConfig {
+
+    private static final String SNOWFLAKE = "snowflake";
+
+    /**
+     * 本地租约比 redis 中的过期时间提前 1 分钟到期，留出续期请求耗时和时钟误差
+     */
+    private static final long LEASE_SAFETY_SECONDS = 60;
+
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT;
+    static {
+        RENEW_SCRIPT = new DefaultRedisScript<>();
+        RENEW_SCRIPT.setLocation(new ClassPathResource("id-worker-renew.lua"));
+        RENEW_SCRIPT.setResultType(Long.class);
+    }
+
+    private final ScheduledExecutorService workerLeaseExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    private final String leaseToken = UUID.randomUUID().toString();
+
+    @Bean
+    @Primary
+    public IdGenerator idGenerator(RedisWorker redisWorker, StringRedisTemplate stringRedisTemplate, Environment environment,
+                                   @Value("${hmdp.id.worker-id:-1}") long workerId) {
+        Map<String, String> config = Binder.get(environment)
+                .bind("hmdp.id.generators", Bindable.mapOf(String.class, String.class))
+                .orElse(Collections.emptyMap());
+        // 有前缀使用雪花算法时才创建雪花算法生成器（并租用机器id）
+        SnowflakeIdGenerator snowflakeIdGenerator = config.values().stream().anyMatch(SNOWFLAKE::equalsIgnoreCase)
+                ? snowflakeIdGenerator(stringRedisTemplate, workerId)
+                : null;
+        Map<String, IdGenerator> generators = new HashMap<>();
+        config.forEach((keyPrefix, type) ->
+                generators.put(keyPrefix, SNOWFLAKE.equalsIgnoreCase(type) ? snowflakeIdGenerator : redisWorker));
+        return new IdGeneratorRouter(redisWorker, generators);
+    }
+
+    private SnowflakeIdGenerator snowflakeIdGenerator(StringRedisTemplate stringRedisTemplate, long workerId) {
+        // 1、指定了机器id，不需要租约
+        if (workerId >= 0) {
+            log.info("雪花算法机器id：{}", workerId);
+            return new SnowflakeIdGenerator(workerId);
+        }
+        // 2、未指定机器id时，启动时从 redis 租用一个，并定时续期
+        long leaseStart = System.nanoTime();
+        workerId = leaseWorkerId(stringRedisTemplate);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(workerId);
+        generator.lease(workerId, leaseDeadline(leaseStart));
+        long period = ID_WORKER_TTL * 60 / 3;
+        workerLeaseExecutor.scheduleAtFixedRate(
+                () -> renewWorkerId(stringRedisTemplate, generator), period, period, TimeUnit.SECONDS);
+        log.info("雪花算法机器id：{}", workerId);
+        return generator;
+    }
+
+    /**
+     * 租用机器id：从自增序号开始依次尝试 SET id:worker:{n} token NX EX
+     */
+    private long leaseWorkerId(StringRedisTemplate stringRedisTemplate) {
+        long start = stringRedisTemplate.opsForValue().increment(ID_WORKER_SEQ_KEY);
+        for (long i = 0; i <= SnowflakeIdGenerator.MAX_WORKER_ID; i++) {
+            long workerId = (start + i) & SnowflakeIdGenerator.MAX_WORKER_ID;
+            Boolean success = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(ID_WORKER_KEY + workerId, leaseToken, ID_WORKER_TTL, TimeUnit.MINUTES);
+            if (BooleanUtil.isTrue(success)) {
+                return workerId;
+            }
+        }
+        throw new IllegalStateException("没有可用的雪花算法机器id");
+    }
+
+    /**
+     * 续期：lua 脚本比较 token 后延长过期时间；租约已丢失时重新租用机器id并切换
+     * 续期失败（redis 不可用）时不延长本地租约，到期后生成器停止发号，直到下次续期成功
+     */
+    private void renewWorkerId(StringRedisTemplate stringRedisTemplate, SnowflakeIdGenerator generator) {
+        long renewStart = System.nanoTime();
+        long workerId = generator.getWorkerId();
+        try {
+            // 1、续期当前机器id
+            Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT,
+                    Collections.singletonList(ID_WORKER_KEY + workerId),
+                    leaseToken, String.valueOf(TimeUnit.MINUTES.toMillis(ID_WORKER_TTL)));
+            if (renewed != null && renewed == 1) {
+                generator.lease(workerId, leaseDeadline(renewStart));
+                return;
+            }
+            // 2、租约已丢失，机器id可能已被其他节点租用，重新租用一个
+            log.error("雪花算法机器id租约已丢失：{}，重新租用", workerId);
+            generator.lease(leaseWorkerId(stringRedisTemplate), leaseDeadline(renewStart));
+        } catch (Exception e) {
+            log.warn("雪花算法机器id续期失败：{}", workerId, e);
+        }
+    }
+
+    private static long leaseDeadline(long leaseStartNanos) {
+        return leaseStartNanos + TimeUnit.SECONDS.toNanos(ID_WORKER_TTL * 60 - LEASE_SAFETY_SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        workerLeaseExecutor.shutdownNow();
+    }
+}
@@ -26,7 +26,9 @@ public class MvcConfig implements WebMvcConfigurer {
                         "/upload/**",
                         "/blog/hot",
                         "/user/code",
-                        "/user/login"
+                        "/user/login",
+                        // 管理端点在独立的管理端口上；与业务端口相同时只有健康检查不需要登录
+                        "/actuator/health"
                 ).order(1);
 
         // token 拦截器
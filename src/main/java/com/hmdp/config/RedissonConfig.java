@@ -1,9 +1,11 @@
 package com.hmdp.config;
 
-import io.lettuce.core.RedisClient;
+import cn.hutool.core.util.StrUtil;
 import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
 import org.redisson.config.Config;
+import org.redisson.config.SingleServerConfig;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -11,12 +13,15 @@ import org.springframework.context.annotation.Configuration;
 public class RedissonConfig {
 
     @Bean
-    public RedissonClient redissonClient(){
-        // 配置
+    public RedissonClient redissonClient(RedisProperties redisProperties){
+        // 配置，与 spring.redis 使用同一个 redis
         Config config = new Config();
-        config.useSingleServer()
-                .setAddress("redis://43.143.244.42:6379")
-                .setPassword("xxgcxy@20231107");
+        SingleServerConfig serverConfig = config.useSingleServer()
+                .setAddress("redis://" + redisProperties.getHost() + ":" + redisProperties.getPort())
+                .setDatabase(redisProperties.getDatabase());
+        if (StrUtil.isNotBlank(redisProperties.getPassword())) {
+            serverConfig.setPassword(redisProperties.getPassword());
+        }
 
         // 创建RedissonClient对象
         return Redisson.create(config);
@@ -0,0 +1,100 @@
+package com.hmdp.config;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.utils.ShopSpatialIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_KEY;
+
+/**
+ * 商铺坐标加载：启动时把全部商铺按类型 GEOADD 到 shop:geo:{typeId}，并构建本地空间索引
+ * 新增、修改商铺时由 ShopServiceImpl 同步更新
+ */
+@Slf4j
+@Configuration
+public class ShopGeoConfig {
+
+    @Value("${hmdp.shop.geo.batch-size:1000}")
+    private int batchSize;
+
+    @Bean
+    @ConditionalOnProperty(name = "hmdp.shop.geo.load-on-startup", havingValue = "true", matchIfMissing = true)
+    public ApplicationRunner shopGeoLoader(ShopMapper shopMapper, StringRedisTemplate stringRedisTemplate) {
+        return args -> {
+            long lastId = 0;
+            long count = 0;
+            while (true) {
+                // 1、按 id 分批查询商铺坐标
+                List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                        .select("id", "type_id", "x", "y")
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("limit " + batchSize));
+                if (shops.isEmpty()) {
+                    break;
+                }
+                // 2、按类型分组，每个类型一条 GEOADD，一次管道写入
+                Map<Long, Map<byte[], Point>> byType = new HashMap<>();
+                for (Shop shop : shops) {
+                    if (shop.getTypeId() == null || shop.getX() == null || shop.getY() == null) {
+                        continue;
+                    }
+                    byType.computeIfAbsent(shop.getTypeId(), k -> new HashMap<>())
+                            .put(shop.getId().toString().getBytes(StandardCharsets.UTF_8), new Point(shop.getX(), shop.getY()));
+                }
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    byType.forEach((typeId, locations) ->
+                            connection.geoAdd((SHOP_GEO_KEY + typeId).getBytes(StandardCharsets.UTF_8), locations));
+                    return null;
+                });
+                count += shops.size();
+                if (shops.size() < batchSize) {
+                    break;
+                }
+                lastId = shops.get(shops.size() - 1).getId();
+            }
+            log.info("商铺坐标加载完成，数量：{}", count);
+        };
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "hmdp.shop.spatial-index.enabled", havingValue = "true", matchIfMissing = true)
+    public ApplicationRunner shopSpatialIndexLoader(ShopMapper shopMapper, ShopSpatialIndex shopSpatialIndex) {
+        return args -> {
+            long lastId = 0;
+            while (true) {
+                List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                        .select("id", "type_id", "x", "y")
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("limit " + batchSize));
+                for (Shop shop : shops) {
+                    if (shop.getTypeId() != null && shop.getX() != null && shop.getY() != null) {
+                        shopSpatialIndex.put(shop.getId(), shop.getTypeId(), shop.getX(), shop.getY());
+                    }
+                }
+                if (shops.size() < batchSize) {
+                    break;
+                }
+                lastId = shops.get(shops.size() - 1).getId();
+            }
+            shopSpatialIndex.setReady(true);
+            log.info("商铺空间索引构建完成，数量：{}", shopSpatialIndex.size());
+        };
+    }
+}
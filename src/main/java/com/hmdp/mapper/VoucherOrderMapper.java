@@ -2,6 +2,9 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +16,10 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface VoucherOrderMapper extends BaseMapper<VoucherOrder> {
 
+    /**
+     * 批量插入订单，(user_id, voucher_id) 唯一索引冲突的订单直接忽略
+     * @param orders 订单列表
+     * @return 实际插入的订单数
+     */
+    int insertIgnoreBatch(@Param("orders") List<VoucherOrder> orders);
 }
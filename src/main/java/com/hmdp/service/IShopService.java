@@ -21,5 +21,22 @@ public interface IShopService extends IService<Shop> {
      */
     Result queryById(Long id);
 
+    /**
+     * 更新商铺信息，事务提交后删除缓存
+     * @param shop 商铺数据
+     * @return
+     */
+    Result updateShop(Shop shop);
+
+    /**
+     * 根据商铺类型分页查询商铺信息，传入坐标时按距离由近到远排序
+     * @param typeId 商铺类型
+     * @param current 页码
+     * @param x 经度，可为空
+     * @param y 纬度，可为空
+     * @return 商铺列表
+     */
+    Result queryShopByType(Integer typeId, Integer current, Double x, Double y);
+
 
 }
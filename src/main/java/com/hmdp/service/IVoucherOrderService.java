@@ -4,6 +4,8 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -27,4 +29,12 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
      * @return
      */
     Result createVoucherOrder(Long voucherId);
+
+    /**
+     * 批量下单（异步消费 stream.orders）
+     * 一条多值 INSERT IGNORE 写入订单，按优惠券聚合扣减库存，重复订单依赖唯一索引忽略
+     * @param voucherOrders 订单列表（订单id、用户id、优惠券id）
+     * @return 实际插入的订单数
+     */
+    int createVoucherOrders(List<VoucherOrder> voucherOrders);
 }
@@ -6,6 +6,9 @@ import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.conditions.query.QueryChainWrapper;
 import com.baomidou.mybatisplus.extension.conditions.update.UpdateChainWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.dto.LikeResult;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.ScrollResult;
 import com.hmdp.dto.UserDTO;
@@ -17,16 +20,33 @@ import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.service.IFollowService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.BlogHotRanking;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.HotKeyDetector;
+import com.hmdp.utils.RedisBloomFilter;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
@@ -39,6 +59,7 @@ import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IBlogService {
 
@@ -51,28 +72,131 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private RedisBloomFilter blogBloomFilter;
+
+    @Autowired
+    private HotKeyDetector hotKeyDetector;
+
+    @Autowired
+    private CacheClient cacheClient;
+
+    @Autowired
+    private BlogHotRanking blogHotRanking;
+
+    /**
+     * 粉丝数达到该值的作者发布笔记时只写入发件箱，由粉丝读取时拉取
+     */
+    @Value("${hmdp.feed.big-author-threshold:10000}")
+    private long bigAuthorThreshold;
+
+    /**
+     * 推送笔记时每批查询的粉丝数
+     */
+    @Value("${hmdp.feed.push-batch-size:1000}")
+    private int feedPushBatchSize;
+
+    /**
+     * 大 V 发件箱保留的笔记数
+     */
+    @Value("${hmdp.feed.outbox-size:1000}")
+    private long outboxSize;
+
+    /**
+     * 作者粉丝数的缓存时间（分钟），判断是否为大 V 时不必每次发布都 COUNT 粉丝
+     */
+    @Value("${hmdp.feed.follower-count-ttl-minutes:10}")
+    private long followerCountTtlMinutes;
+
+    /**
+     * 推送队列的容量，队列满时丢弃新笔记的推送
+     */
+    @Value("${hmdp.feed.push-queue-size:10000}")
+    private int feedPushQueueSize;
+
+    /**
+     * 推送线程：单线程按发布顺序推送，随 bean 创建、销毁
+     * 推送是尽力而为：队列满时丢弃推送并记录日志，不在发布请求的线程中推送；停机时等待队列中的推送完成，
+     * 进程崩溃时队列中未推送的笔记丢失（笔记已保存，只是不出现在粉丝的收件箱中）
+     */
+    private ThreadPoolExecutor feedPushExecutor;
+
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> LIKE_SCRIPT;
+    static {
+        LIKE_SCRIPT = new DefaultRedisScript<>();
+        LIKE_SCRIPT.setLocation(new ClassPathResource("like.lua"));
+        LIKE_SCRIPT.setResultType(List.class);
+    }
+
+    /**
+     * 热门博客第一页的本地缓存时间（秒）
+     */
+    @Value("${hmdp.blog.hot.first-page-seconds:5}")
+    private long hotFirstPageSeconds;
+
+    /**
+     * 热门博客第一页（已设置作者信息，不含当前用户的点赞状态）
+     */
+    private Cache<Integer, List<Blog>> hotFirstPage;
+
+    @PostConstruct
+    private void init() {
+        hotFirstPage = Caffeine.newBuilder()
+                .maximumSize(1)
+                .expireAfterWrite(hotFirstPageSeconds, TimeUnit.SECONDS)
+                .build();
+        feedPushExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(feedPushQueueSize), r -> new Thread(r, "feed-push"));
+    }
+
+    @PreDestroy
+    private void destroy() throws InterruptedException {
+        // 停机前推送完队列中的笔记
+        feedPushExecutor.shutdown();
+        if (!feedPushExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("停机时仍有 {} 篇笔记未推送", feedPushExecutor.getQueue().size());
+        }
+    }
+
     /**
-     * 查询热点 博客
+     * 查询热点 博客：按 redis 热度排行分页（ZREVRANGE），第一页缓存在本地
      * @param current
      * @return
      */
     @Override
     public Result queryHotBlog(Integer current) {
-        // 根据用户查询
-        Page<Blog> page = query()
-                .orderByDesc("liked")
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 获取当前页数据
-        List<Blog> records = page.getRecords();
-        // 查询用户、查询blog是否被用户点过赞
-//        records.forEach(this::queryBlogUser);
-        records.forEach(blog -> {
-            queryBlogUser(blog);
-            isBlogLiked(blog);
-        });
+        // 1、查询当前页，第一页先查本地缓存
+        List<Blog> cached = current == 1 ? hotFirstPage.get(current, this::queryHotPage) : queryHotPage(current);
+        if (cached.isEmpty() && current == 1 && !blogHotRanking.exists()) {
+            // 1.1、排行尚未建立，按点赞数查询数据库
+            hotFirstPage.invalidateAll();
+            Page<Blog> page = query()
+                    .orderByDesc("liked")
+                    .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
+            cached = page.getRecords();
+            fillBlogUsers(cached);
+        }
+        // 2、复制一份（缓存中的博客共享），查询blog是否被用户点过赞
+        List<Blog> records = cached.stream()
+                .map(blog -> BeanUtil.copyProperties(blog, Blog.class))
+                .collect(Collectors.toList());
+        fillBlogLiked(records);
         return Result.ok(records);
     }
 
+    // 按热度排行查询一页博客，并设置作者信息
+    private List<Blog> queryHotPage(int current) {
+        List<Long> ids = blogHotRanking.page(current, SystemConstants.MAX_PAGE_SIZE);
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<Long, Blog> map = listByIds(ids).stream().collect(Collectors.toMap(Blog::getId, b -> b));
+        List<Blog> blogs = ids.stream().map(map::get).filter(Objects::nonNull).collect(Collectors.toList());
+        fillBlogUsers(blogs);
+        return blogs;
+    }
+
     /**
      * 查询博客信息
      * @param id 博客id
@@ -80,81 +204,93 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
      */
     @Override
     public Result queryBlogById(Long id) {
-        // 1、查询博客
-        Blog blog = getById(id);
+        // 1、查询博客，布隆过滤器判断一定不存在的 id 不再查询数据库
+        Blog blog = blogBloomFilter.mightContain(id) ? getById(id) : null;
         // 2、判断博客是否为空
         if (blog == null){
             return Result.fail("查询不到博客信息...");
         }
-        // 3、设置博客的用户姓名、用户图标
-        queryBlogUser(blog);
-        // 4、查询blog是否被用户点过赞
-        isBlogLiked(blog);
+        // 3、设置博客的用户姓名、用户图标，查询blog是否被用户点过赞
+        hydrateBlogs(Collections.singletonList(blog));
         return Result.ok(blog);
     }
 
     /**
-     * 查询blog是否被用户点过赞
-     * @param blog
+     * 批量设置博客的用户姓名、用户图标，以及当前用户是否点过赞
+     * 所有作者一次 listByIds，所有点赞判断一次管道 ZSCORE，耗时与博客数量无关
+     * @param blogs
      */
-    private void isBlogLiked(Blog blog) {
-        // 1、获取点赞用户
-        UserDTO user = UserHolder.getUser();
-        if (user == null){
-            // 用户未登录，无需查询是否点赞
+    private void hydrateBlogs(List<Blog> blogs) {
+        fillBlogUsers(blogs);
+        fillBlogLiked(blogs);
+    }
+
+    // 设置博客的用户姓名、用户图标：一次查询所有作者
+    private void fillBlogUsers(List<Blog> blogs) {
+        if (blogs.isEmpty()) {
             return;
         }
-        Long userId = user.getId();
-        // 2、从 redis 获取该博客的用户点赞信息 true 点过赞、false 未点过赞
-        String key = BLOG_LIKED_KEY + blog.getId();
-        Double score = stringRedisTemplate.opsForZSet().score(key,userId.toString());
-        blog.setIsLike(score != null);
+        Set<Long> userIds = blogs.stream().map(Blog::getUserId).collect(Collectors.toSet());
+        Map<Long, User> users = userService.listByIds(userIds).stream()
+                .collect(Collectors.toMap(User::getId, u -> u));
+        for (Blog blog : blogs) {
+            User user = users.get(blog.getUserId());
+            if (user != null) {
+                blog.setName(user.getNickName());
+                blog.setIcon(user.getIcon());
+            }
+        }
     }
 
-    /**
-     * 根据blog设置相关的用户姓名、用户图标
-     * @param blog
-     */
-    private void queryBlogUser(Blog blog) {
-        Long userId = blog.getUserId();
-        User user = userService.getById(userId);
-        blog.setName(user.getNickName());
-        blog.setIcon(user.getIcon());
+    // 设置当前用户是否点过赞：一次管道查询所有博客
+    private void fillBlogLiked(List<Blog> blogs) {
+        if (blogs.isEmpty()) {
+            return;
+        }
+        // 1、用户未登录，无需查询是否点赞
+        UserDTO user = UserHolder.getUser();
+        if (user == null) {
+            return;
+        }
+        // 2、一次管道查询每篇博客的点赞信息，有分数即点过赞
+        byte[] member = user.getId().toString().getBytes(StandardCharsets.UTF_8);
+        List<Object> scores = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Blog blog : blogs) {
+                String key = BLOG_LIKED_KEY + blog.getId();
+                // 每个用户的结果不同，只记录访问用于热点探测
+                hotKeyDetector.record(key);
+                connection.zScore(key.getBytes(StandardCharsets.UTF_8), member);
+            }
+            return null;
+        });
+        for (int i = 0; i < blogs.size(); i++) {
+            blogs.get(i).setIsLike(scores.get(i) != null);
+        }
     }
 
     /**
-     * 用户点赞
+     * 用户点赞：一次 lua 脚本原子地判断并切换点赞状态、更新热度排行，点赞数的变化由 BlogLikeFlusher 定时写回数据库
      * @param id 博客id
-     * @return
+     * @return 点赞状态和最新点赞数
      */
     @Override
     public Result likeBlog(Long id) {
         // 1、获取点赞用户
         Long userId = UserHolder.getUser().getId();
+        if (!blogBloomFilter.mightContain(id)) {
+            return Result.fail("查询不到博客信息...");
+        }
 
-        // 2、从 redis 获取该博客的用户点赞信息 true 点过赞、false 未点过赞
+        // 2、执行 lua 脚本：未点过赞则点赞，已点过赞则取消，同时累加点赞数增量、热度 ±1
         String key = BLOG_LIKED_KEY + id;
-        Double score = stringRedisTemplate.opsForZSet().score(key,userId.toString());
-
-        // 3、判断用户是否点过赞
-        if (score == null){
-            // 4、未点过赞，点赞数 +1
-            // 4.1、数据库点赞数 +1        update tb_blog liked = liked + 1 where id = id
-            boolean isSuccess = update().setSql("liked = liked + 1").eq("id", id).update();
-            if (isSuccess){
-                // 4.2、redis 增加该用户id、score
-                stringRedisTemplate.opsForZSet().add(key,userId.toString(),System.currentTimeMillis());
-            }
-        }else {
-            // 5、已点过赞，点赞数 -1
-            // 5.1、数据库点赞数 -1        update tb_blog liked = liked - 1 where id = id
-            boolean isSuccess = update().setSql("liked = liked - 1").eq("id", id).update();
-            if (isSuccess){
-                // 5.2、redis 删去该用户id
-                stringRedisTemplate.opsForZSet().remove(key,userId.toString());
-            }
-        }
-        return Result.ok();
+        List<Long> result = stringRedisTemplate.execute(LIKE_SCRIPT,
+                Arrays.asList(key, RedisConstants.BLOG_LIKE_DELTA_KEY, RedisConstants.BLOG_HOT_KEY),
+                userId.toString(), String.valueOf(System.currentTimeMillis()), id.toString());
+        // 2.1、点赞用户变化，失效所有节点固定在本地的 top5 点赞用户
+        cacheClient.invalidateLocal(key);
+
+        // 3、返回点赞状态和最新点赞数
+        return Result.ok(new LikeResult(result.get(0) == 1, result.get(1)));
     }
 
 /*    @Override
@@ -197,8 +333,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     @Override
     public Result queryBlogLikes(Long id) {
         String key = BLOG_LIKED_KEY + id;
-        // 1、查询 top5 的点赞用户 zrange key 0 4
-        Set<String> top5 = stringRedisTemplate.opsForZSet().range(key, 0, 4);
+        // 1、查询 top5 的点赞用户 zrange key 0 4，热点博客的结果固定在本地缓存
+        Set<String> top5 = hotKeyDetector.get(key, () -> stringRedisTemplate.opsForZSet().range(key, 0, 4));
         if (top5 == null || top5.isEmpty()){
             return Result.ok(Collections.emptyList());
         }
@@ -254,23 +390,84 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         if (!isSuccess){
             return Result.fail("博客保存失败！");
         }
+        blogBloomFilter.add(blog.getId());
+        blogHotRanking.add(blog);
+
+        // 3、异步推送笔记 id，发布耗时与粉丝数无关
+        Long authorId = user.getId();
+        Long blogId = blog.getId();
+        long now = System.currentTimeMillis();
+        try {
+            feedPushExecutor.submit(() -> {
+                try {
+                    pushFeed(authorId, blogId, now);
+                } catch (Exception e) {
+                    log.error("推送笔记失败：{}", blogId, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 推送队列已满，丢弃本次推送，发布请求照常返回
+            log.error("推送队列已满，笔记 {} 未推送给粉丝", blogId);
+        }
 
-        // 3、查询笔记作者的所有粉丝
-        List<Follow> follows = followService.query().eq("follow_user_id", user.getId()).list();
-
-        // 4、推送笔记 id 给所有粉丝
-        for (Follow follow : follows) {
-            // 4.1、获取粉丝 id
-            Long userId = follow.getUserId();
+        // 4、返回id
+        return Result.ok(blog.getId());
+    }
 
-            // 4.2、推送
-            String key = RedisConstants.FEED_KEY + userId;
-            stringRedisTemplate.opsForZSet()
-                    .add(key,blog.getId().toString(),System.currentTimeMillis());
+    /**
+     * 推送笔记（推拉结合）
+     * 粉丝数达到 bigAuthorThreshold 的作者只写入自己的发件箱 feed:outbox:{作者id}，粉丝读取时拉取；
+     * 其余作者按 id 分批查询粉丝，每批一次管道写入粉丝的收件箱 feed:{粉丝id}
+     */
+    private void pushFeed(Long authorId, Long blogId, long time) {
+        String member = blogId.toString();
+        // 1、大 V：写入发件箱，只保留最新的 outboxSize 篇
+        boolean bigAuthor = BooleanUtil.isTrue(stringRedisTemplate.opsForSet().isMember(RedisConstants.FEED_BIG_AUTHORS_KEY, authorId.toString()))
+                || followerCount(authorId) >= bigAuthorThreshold;
+        if (bigAuthor) {
+            String outboxKey = RedisConstants.FEED_OUTBOX_KEY + authorId;
+            stringRedisTemplate.opsForSet().add(RedisConstants.FEED_BIG_AUTHORS_KEY, authorId.toString());
+            stringRedisTemplate.opsForZSet().add(outboxKey, member, time);
+            stringRedisTemplate.opsForZSet().removeRange(outboxKey, 0, -outboxSize - 1);
+            return;
         }
+        // 2、普通作者：按 id 分批查询粉丝，管道推送
+        byte[] rawMember = member.getBytes(StandardCharsets.UTF_8);
+        long lastId = 0;
+        while (true) {
+            List<Follow> follows = followService.query()
+                    .select("id", "user_id")
+                    .eq("follow_user_id", authorId)
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + feedPushBatchSize)
+                    .list();
+            if (follows.isEmpty()) {
+                break;
+            }
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Follow follow : follows) {
+                    connection.zAdd((RedisConstants.FEED_KEY + follow.getUserId()).getBytes(StandardCharsets.UTF_8), time, rawMember);
+                }
+                return null;
+            });
+            if (follows.size() < feedPushBatchSize) {
+                break;
+            }
+            lastId = follows.get(follows.size() - 1).getId();
+        }
+    }
 
-        // 5、返回id
-        return Result.ok(blog.getId());
+    // 作者的粉丝数，缓存 followerCountTtlMinutes 分钟（走 tb_follow 的 (follow_user_id, id) 索引）
+    private long followerCount(Long authorId) {
+        String key = RedisConstants.FEED_FOLLOWER_COUNT_KEY + authorId;
+        String cached = stringRedisTemplate.opsForValue().get(key);
+        if (cached != null) {
+            return Long.parseLong(cached);
+        }
+        long count = followService.query().eq("follow_user_id", authorId).count();
+        stringRedisTemplate.opsForValue().set(key, String.valueOf(count), followerCountTtlMinutes, TimeUnit.MINUTES);
+        return count;
     }
 
     /**
@@ -284,10 +481,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         // 1、获取当前用户
         Long userId = UserHolder.getUser().getId();
 
-        // 2、查询收件箱 ZREVRANGEBYSCORE key Max Min LIMIT offset count
-        String key = RedisConstants.FEED_KEY + userId;
-        Set<ZSetOperations.TypedTuple<String>> typedTuples = stringRedisTemplate.opsForZSet()
-                .reverseRangeByScoreWithScores(key, 0, max, offset, 2);
+        // 2、查询收件箱，并合并关注的大 V 的发件箱
+        List<ZSetOperations.TypedTuple<String>> typedTuples = queryFeed(userId, max, offset, 2);
 
         // 3、非空判断
         if (typedTuples == null || typedTuples.isEmpty()){
@@ -311,7 +506,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
                 os = 1;
             }
         }
-        os = minTime == max ? os : os + offset;
+        // 4.3、本页的博客时间戳都等于 max 时，下一页还要跳过上一次的偏移量
+        os = minTime == max ? os + offset : os;
 
         // 5、根据 id 查询 blog
         String idStr = StrUtil.join(",", ids);
@@ -319,19 +515,54 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
                 .in("id", ids)
                 .last("order by field(id, " + idStr + ")").list();
 
-        for (Blog blog : blogs) {
-            // 5.1、查询blog有关的用户
-            queryBlogUser(blog);
-            // 5.2、查询blog是否被点赞
-            isBlogLiked(blog);
-        }
+        // 5.1、批量查询blog有关的用户、是否被点赞
+        hydrateBlogs(blogs);
 
         // 6、封装并返回
         ScrollResult r = new ScrollResult();
         r.setList(blogs);
-        r.setOffset(offset);
+        r.setOffset(os);
         r.setMinTime(minTime);
 
         return Result.ok(r);
     }
+
+    /**
+     * 查询收件箱和关注的大 V 的发件箱，按时间戳倒序合并，相当于对合并后的 feed 执行 ZREVRANGEBYSCORE max 0 LIMIT offset count
+     */
+    private List<ZSetOperations.TypedTuple<String>> queryFeed(Long userId, Long max, Integer offset, int count) {
+        // 1、关注的大 V：SINTER follow:{userId} feed:big-authors
+        Set<String> bigAuthors = stringRedisTemplate.opsForSet()
+                .intersect(RedisConstants.FOLLOW_KEY + userId, RedisConstants.FEED_BIG_AUTHORS_KEY);
+        List<String> keys = new ArrayList<>();
+        keys.add(RedisConstants.FEED_KEY + userId);
+        if (bigAuthors != null) {
+            bigAuthors.forEach(authorId -> keys.add(RedisConstants.FEED_OUTBOX_KEY + authorId));
+        }
+        // 2、一次管道查询每个 zset 中不大于 max 的前 offset + count 个
+        RedisZSetCommands.Range range = RedisZSetCommands.Range.range().gte(0).lte(max);
+        RedisZSetCommands.Limit limit = RedisZSetCommands.Limit.limit().offset(0).count(offset + count);
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String k : keys) {
+                connection.zRevRangeByScoreWithScores(k.getBytes(StandardCharsets.UTF_8), range, limit);
+            }
+            return null;
+        });
+        // 3、合并去重，按时间戳倒序（相同时间戳按 id 倒序，与 zset 一致），跳过 offset 个
+        Map<String, ZSetOperations.TypedTuple<String>> merged = new HashMap<>();
+        for (Object result : results) {
+            @SuppressWarnings("unchecked")
+            Set<ZSetOperations.TypedTuple<String>> tuples = (Set<ZSetOperations.TypedTuple<String>>) result;
+            if (tuples != null) {
+                tuples.forEach(tuple -> merged.putIfAbsent(tuple.getValue(), tuple));
+            }
+        }
+        return merged.values().stream()
+                .sorted(Comparator.comparing(ZSetOperations.TypedTuple<String>::getScore)
+                        .thenComparing(ZSetOperations.TypedTuple::getValue)
+                        .reversed())
+                .skip(offset)
+                .limit(count)
+                .collect(Collectors.toList());
+    }
 }
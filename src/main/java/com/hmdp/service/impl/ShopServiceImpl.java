@@ -1,31 +1,46 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.RandomUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
+import cn.hutool.core.bean.BeanUtil;
 import com.hmdp.dto.Result;
-import com.hmdp.entity.RedisData;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.utils.CacheClient;
-import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.RedisBloomFilter;
+import com.hmdp.utils.ShopSpatialIndex;
+import com.hmdp.utils.SystemConstants;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.geo.Circle;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.geo.GeoResults;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.time.LocalDateTime;
-import java.util.Random;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
 import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TTL;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_KEY;
 
 /**
  * <p>
@@ -45,7 +60,29 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     @Autowired
     private CacheClient cacheClient;
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    @Resource
+    private RedisBloomFilter shopBloomFilter;
+
+    /**
+     * 附近商铺的搜索半径（米）
+     */
+    @Value("${hmdp.shop.geo.radius-meters:5000}")
+    private double geoRadiusMeters;
+
+    /**
+     * 按距离分页最多返回的商铺数，超出后的页码返回空列表
+     */
+    @Value("${hmdp.shop.geo.max-results:500}")
+    private int geoMaxResults;
+
+    @Autowired
+    private ShopSpatialIndex shopSpatialIndex;
+
+    /**
+     * 附近商铺的查询来源：redis（GEO 查询失败时使用本地空间索引）/ memory（本地空间索引，加载完成前或未启用时使用 redis GEO）
+     */
+    @Value("${hmdp.shop.geo.source:redis}")
+    private String geoSource;
 
     /**
      * 根据id查询商铺信息
@@ -75,6 +112,172 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         return Result.ok(shop);
     }
 
+    /**
+     * 更新商铺信息：先更新数据库，事务提交后删除缓存，并延时再删除一次
+     * @param shop 商铺数据
+     * @return
+     */
+    @Override
+    @Transactional
+    public Result updateShop(Shop shop) {
+        Long id = shop.getId();
+        // 1、判断 id 是否为空
+        if (id == null) {
+            return Result.fail("商铺 id 不能为空！");
+        }
+        // 2、修改了类型或坐标，先查询原数据，用于更新 GEO
+        Shop old = shop.getTypeId() != null || shop.getX() != null || shop.getY() != null ? getById(id) : null;
+        // 3、更新数据库
+        updateById(shop);
+        // 4、事务提交后删除缓存（包括所有节点的本地缓存），避免其他请求在提交前把旧数据写回缓存
+        String key = CACHE_SHOP_KEY + id;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                cacheClient.deleteTwice(key);
+                if (old != null) {
+                    updateGeo(old, shop);
+                }
+            }
+        });
+        return Result.ok();
+    }
+
+    /**
+     * 根据商铺类型分页查询商铺信息
+     * @param typeId 商铺类型
+     * @param current 页码
+     * @param x 经度
+     * @param y 纬度
+     * @return
+     */
+    @Override
+    public Result queryShopByType(Integer typeId, Integer current, Double x, Double y) {
+        // 0、传入坐标，按距离查询
+        if (x != null && y != null) {
+            return Result.ok(queryNearbyShops(typeId, current, x, y));
+        }
+        // 1、根据类型分页查询商铺 id
+        Page<Shop> page = query()
+                .select("id")
+                .eq("type_id", typeId)
+                .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
+        List<Long> ids = page.getRecords().stream().map(Shop::getId).collect(Collectors.toList());
+        // 2、批量查询商铺缓存（一次 MGET），未命中的商铺一次查询数据库
+        List<Shop> shops = cacheClient.queryBatchWithLogicalExpire(CACHE_SHOP_KEY, ids, Shop.class,
+                this::queryShopMapByIds, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        // 3、返回
+        return Result.ok(shops);
+    }
+
+    // 按距离分页查询：查询前 current 页的商铺 id 和距离，截取当前页后批量查询商铺缓存
+    private List<Shop> queryNearbyShops(Integer typeId, Integer current, Double x, Double y) {
+        // 1、查询半径内由近到远的前 end 个商铺，最多翻到第 geoMaxResults 个（页码由用户传入，不能决定查询数量）
+        long from = (Math.max(current, 1) - 1L) * SystemConstants.DEFAULT_PAGE_SIZE;
+        if (from >= geoMaxResults) {
+            return Collections.emptyList();
+        }
+        int end = (int) Math.min(from + SystemConstants.DEFAULT_PAGE_SIZE, geoMaxResults);
+        // 本地空间索引启动加载完成前查询结果不完整，先使用 redis GEO
+        Map<Long, Double> distances = "memory".equals(geoSource) && shopSpatialIndex.isReady()
+                ? queryNearbyFromIndex(typeId, x, y, end)
+                : queryNearbyFromRedis(typeId, x, y, end);
+        if (distances.size() <= from) {
+            return Collections.emptyList();
+        }
+        // 2、截取当前页
+        List<Long> ids = new ArrayList<>(distances.keySet()).subList((int) from, distances.size());
+        // 3、批量查询商铺缓存，按距离顺序返回，并填充距离（复制一份，不修改缓存中的对象）
+        List<Shop> shops;
+        try {
+            shops = cacheClient.queryBatchWithLogicalExpire(CACHE_SHOP_KEY, ids, Shop.class,
+                    this::queryShopMapByIds, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        } catch (DataAccessException e) {
+            // 3.1、redis 不可用，直接查询数据库
+            log.warn("批量查询商铺缓存失败，直接查询数据库：{}", e.getMessage());
+            Map<Long, Shop> map = queryShopMapByIds(ids);
+            shops = ids.stream().map(map::get).filter(Objects::nonNull).collect(Collectors.toList());
+        }
+        List<Shop> list = new ArrayList<>(shops.size());
+        for (Shop shop : shops) {
+            Shop copy = BeanUtil.copyProperties(shop, Shop.class);
+            copy.setDistance(distances.get(shop.getId()));
+            list.add(copy);
+        }
+        return list;
+    }
+
+    // redis GEO 查询：商铺 id -> 距离，按距离由近到远；redis 不可用且本地空间索引已就绪时使用本地索引
+    private Map<Long, Double> queryNearbyFromRedis(Integer typeId, Double x, Double y, int limit) {
+        GeoResults<RedisGeoCommands.GeoLocation<String>> results;
+        try {
+            results = stringRedisTemplate.opsForGeo().radius(
+                    SHOP_GEO_KEY + typeId,
+                    new Circle(new Point(x, y), new Distance(geoRadiusMeters, RedisGeoCommands.DistanceUnit.METERS)),
+                    RedisGeoCommands.GeoRadiusCommandArgs.newGeoRadiusArgs().includeDistance().sortAscending().limit(limit));
+        } catch (DataAccessException e) {
+            if (!shopSpatialIndex.isReady()) {
+                throw e;
+            }
+            log.warn("GEO 查询失败，使用本地空间索引：{}", e.getMessage());
+            return queryNearbyFromIndex(typeId, x, y, limit);
+        }
+        Map<Long, Double> distances = new LinkedHashMap<>();
+        if (results != null) {
+            for (GeoResult<RedisGeoCommands.GeoLocation<String>> result : results) {
+                distances.put(Long.valueOf(result.getContent().getName()), result.getDistance().getValue());
+            }
+        }
+        return distances;
+    }
+
+    // 本地空间索引查询：商铺 id -> 距离，按距离由近到远
+    private Map<Long, Double> queryNearbyFromIndex(Integer typeId, Double x, Double y, int limit) {
+        Map<Long, Double> distances = new LinkedHashMap<>();
+        for (ShopSpatialIndex.Neighbor neighbor : shopSpatialIndex.radius(typeId, x, y, geoRadiusMeters, limit)) {
+            distances.put(neighbor.getId(), neighbor.getDistance());
+        }
+        return distances;
+    }
+
+    // 更新商铺坐标：类型变化时从原类型的 GEO 中移除
+    private void updateGeo(Shop old, Shop shop) {
+        Long typeId = shop.getTypeId() != null ? shop.getTypeId() : old.getTypeId();
+        Double x = shop.getX() != null ? shop.getX() : old.getX();
+        Double y = shop.getY() != null ? shop.getY() : old.getY();
+        String member = old.getId().toString();
+        if (old.getTypeId() != null && !old.getTypeId().equals(typeId)) {
+            stringRedisTemplate.opsForGeo().remove(SHOP_GEO_KEY + old.getTypeId(), member);
+        }
+        if (typeId != null && x != null && y != null) {
+            shopSpatialIndex.put(old.getId(), typeId, x, y);
+            stringRedisTemplate.opsForGeo().add(SHOP_GEO_KEY + typeId, new Point(x, y), member);
+        }
+    }
+
+    // 根据 id 批量查询商铺
+    private Map<Long, Shop> queryShopMapByIds(List<Long> ids) {
+        return listByIds(ids).stream().collect(Collectors.toMap(Shop::getId, Function.identity()));
+    }
+
+    /**
+     * 新增商铺，同时写入布隆过滤器和 GEO
+     * @param shop
+     * @return
+     */
+    @Override
+    public boolean save(Shop shop) {
+        boolean isSuccess = super.save(shop);
+        if (isSuccess) {
+            shopBloomFilter.add(shop.getId());
+            if (shop.getTypeId() != null && shop.getX() != null && shop.getY() != null) {
+                shopSpatialIndex.put(shop.getId(), shop.getTypeId(), shop.getX(), shop.getY());
+                stringRedisTemplate.opsForGeo().add(SHOP_GEO_KEY + shop.getTypeId(), new Point(shop.getX(), shop.getY()), shop.getId().toString());
+            }
+        }
+        return isSuccess;
+    }
+
 
 
 }
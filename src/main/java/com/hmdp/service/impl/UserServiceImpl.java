@@ -10,6 +10,7 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.RedisBloomFilter;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.RegexUtils;
 import com.hmdp.utils.UserHolder;
@@ -48,6 +49,9 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private RedisBloomFilter userBloomFilter;
+
     /**
      * 发送手机验证码
      * @param phone
@@ -144,6 +148,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         user.setNickName(USER_NICK_NAME_PREFIX + RandomUtil.randomString(10));
         // 保存到数据库
         save(user);
+        userBloomFilter.add(user.getId());
         return user;
     }
 
@@ -154,8 +159,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
      */
     @Override
     public Result queryUserById(Long userId) {
-        // 1、获取用户信息
-        User user = getById(userId);
+        // 1、获取用户信息，布隆过滤器判断一定不存在的 id 不再查询数据库
+        User user = userBloomFilter.mightContain(userId) ? getById(userId) : null;
         // 2、判断用户是否存在
         if (user == null){
             return Result.fail("用户不存在！");
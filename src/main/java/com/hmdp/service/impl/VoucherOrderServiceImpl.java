@@ -1,5 +1,6 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
 import com.baomidou.mybatisplus.extension.conditions.query.QueryChainWrapper;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.UserDTO;
@@ -9,22 +10,62 @@ import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.hmdp.utils.RedisWorker;
+import com.hmdp.utils.IdGenerator;
+import com.hmdp.utils.SeckillKeys;
 import com.hmdp.utils.SimpleRedisLock;
 import com.hmdp.utils.UserHolder;
+import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
 import org.springframework.aop.framework.AopContext;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_DEAD_STREAM;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_GROUP;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAM;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAMS_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_SHARDS_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_RESET_CHANNEL;
 
 /**
  * <p>
@@ -34,6 +75,7 @@ import java.util.Collections;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, VoucherOrder> implements IVoucherOrderService {
 
@@ -42,13 +84,45 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     private ISeckillVoucherService seckillVoucherService;
 
     @Autowired
-    private RedisWorker redisWorker;
+    private IdGenerator idGenerator;
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
 
     @Autowired
     private RedissonClient redissonClient;
 
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    // 代理对象（保证异步线程中调用的事务生效）
+    @Lazy
+    @Autowired
+    private IVoucherOrderService proxy;
+
+    /**
+     * 当前节点在消费者组中的名称，重启后保持不变，才能认领自己的 pending-list
+     */
+    @Value("${hmdp.seckill.consumer:c1}")
+    private String consumerName;
+
+    /**
+     * 每次从消息队列中读取的最大订单数
+     */
+    @Value("${hmdp.seckill.batch-size:100}")
+    private int batchSize;
+
+    /**
+     * 订单最多投递次数，超过后转入死信队列 stream.orders.dead
+     */
+    @Value("${hmdp.seckill.max-deliveries:5}")
+    private int maxDeliveries;
+
+    /**
+     * 落库失败的订单留在 pending-list 中，间隔多久重试
+     */
+    @Value("${hmdp.seckill.pending-retry-millis:1000}")
+    private long pendingRetryMillis;
+
     private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
     static {
         SECKILL_SCRIPT = new DefaultRedisScript<>();
@@ -56,6 +130,316 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         SECKILL_SCRIPT.setResultType(Long.class);
     }
 
+    /**
+     * 每隔多久重新读取一次登记的分段订单 stream（库存重置消息丢失时兜底）
+     */
+    private static final long STREAMS_REFRESH_MILLIS = 10_000;
+
+    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private volatile boolean running = true;
+
+    /**
+     * 有新的分段订单 stream 登记（库存重置）时置为 true，订单消费线程随后重新读取登记的 stream
+     */
+    private volatile boolean orderStreamsChanged;
+
+    /**
+     * 本地售罄标记：已售罄的优惠券直接返回，不再执行 lua 脚本
+     */
+    private final Set<Long> soldOutVouchers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 优惠券的分段库存数，创建后不再变化，本地缓存避免每次下单多一次 redis 查询
+     */
+    private final Map<Long, Integer> stockShards = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        // 1、创建消费者组（stream 不存在时一并创建），分段的订单 stream 由订单消费线程发现后创建
+        createOrderGroupIfAbsent(SECKILL_ORDER_STREAM);
+        // 2、启动订单消费线程
+        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
+        // 3、订阅售罄、库存重置消息，同步其他节点的本地售罄标记
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> soldOutVouchers.add(Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8))),
+                new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL));
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> {
+                    Long voucherId = Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8));
+                    soldOutVouchers.remove(voucherId);
+                    stockShards.remove(voucherId);
+                    orderStreamsChanged = true;
+                },
+                new ChannelTopic(SECKILL_STOCK_RESET_CHANNEL));
+    }
+
+    @PreDestroy
+    private void destroy() {
+        running = false;
+        SECKILL_ORDER_EXECUTOR.shutdownNow();
+    }
+
+    // XGROUP CREATE stream.orders g1 0 MKSTREAM
+    private void createOrderGroupIfAbsent(String stream) {
+        try {
+            stringRedisTemplate.execute((RedisCallback<Object>) connection -> connection.execute("XGROUP",
+                    bytes("CREATE"), bytes(stream), bytes(SECKILL_ORDER_GROUP), bytes("0"), bytes("MKSTREAM")));
+        } catch (RedisSystemException e) {
+            // 消费者组已存在
+            if (!String.valueOf(e.getMostSpecificCause().getMessage()).contains("BUSYGROUP")) {
+                throw e;
+            }
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 订单消费线程：批量读取 stream.orders 和分段库存的 stream.orders:{voucherId:shard} 中的订单，按优惠券分别写入数据库后 ACK
+     * 落库失败的订单留在 pending-list 中，每隔 pendingRetryMillis 扫描一遍重试；投递超过 maxDeliveries 次的订单转入死信队列
+     */
+    private class VoucherOrderHandler implements Runnable {
+
+        // 已创建消费者组的订单 stream
+        private final Set<String> streams = new LinkedHashSet<>();
+
+        // 各 stream 下一次扫描 pending-list 的时间，没有待重试订单的 stream 不在其中
+        private final Map<String, Long> pendingRetryAt = new HashMap<>();
+
+        // 下一次重新读取登记的分段订单 stream 的时间
+        private long streamsRefreshAt;
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    // 1、发现新登记的分段订单 stream，创建消费者组并先处理其中未 ACK 的订单（启动时即处理上次未 ACK 的订单）
+                    if (orderStreamsChanged || System.currentTimeMillis() >= streamsRefreshAt) {
+                        refreshStreams();
+                    }
+                    // 2、有落库失败的订单，到时间后扫描一遍对应的 pending-list
+                    retryPendingLists();
+                    // 3、获取消息队列中的订单 XREADGROUP GROUP g1 c1 COUNT 100 BLOCK 2000 STREAMS stream.orders >
+                    // 集群下一次 XREADGROUP 不能跨 slot 读取多个 stream，有分段订单 stream 时逐个非阻塞读取
+                    boolean block = streams.size() == 1;
+                    boolean idle = true;
+                    for (String stream : streams) {
+                        idle &= !readOrders(stream, block);
+                    }
+                    // 4、所有 stream 都没有消息，稍后继续下一次循环
+                    if (idle && !block) {
+                        sleep(50);
+                    }
+                } catch (Exception e) {
+                    if (!running) {
+                        return;
+                    }
+                    log.error("处理订单异常", e);
+                    sleep(50);
+                }
+            }
+        }
+
+        /**
+         * 读取一个 stream 中的新订单，批量下单并 ACK
+         * @return 是否读取到订单
+         */
+        private boolean readOrders(String stream, boolean block) {
+            try {
+                StreamReadOptions options = StreamReadOptions.empty().count(batchSize);
+                List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(
+                        Consumer.from(SECKILL_ORDER_GROUP, consumerName),
+                        block ? options.block(Duration.ofSeconds(2)) : options,
+                        StreamOffset.create(stream, ReadOffset.lastConsumed())
+                );
+                if (records == null || records.isEmpty()) {
+                    return false;
+                }
+                // 有失败的订单时稍后重试 pending-list
+                if (!handleVoucherOrders(stream, records, false)) {
+                    schedulePendingRetry(stream);
+                }
+                return true;
+            } catch (Exception e) {
+                if (running) {
+                    log.error("处理订单异常，stream：{}", stream, e);
+                    // 出现异常，稍后处理 pending-list 中的订单
+                    schedulePendingRetry(stream);
+                    sleep(50);
+                }
+                return false;
+            }
+        }
+
+        private void refreshStreams() {
+            orderStreamsChanged = false;
+            streamsRefreshAt = System.currentTimeMillis() + STREAMS_REFRESH_MILLIS;
+            Set<String> registered = new LinkedHashSet<>();
+            registered.add(SECKILL_ORDER_STREAM);
+            Set<String> shardStreams = stringRedisTemplate.opsForSet().members(SECKILL_ORDER_STREAMS_KEY);
+            if (shardStreams != null) {
+                registered.addAll(shardStreams);
+            }
+            for (String stream : registered) {
+                if (!streams.contains(stream)) {
+                    createOrderGroupIfAbsent(stream);
+                    streams.add(stream);
+                    handlePendingList(stream);
+                }
+            }
+        }
+
+        private void retryPendingLists() {
+            long now = System.currentTimeMillis();
+            List<String> due = pendingRetryAt.entrySet().stream()
+                    .filter(entry -> now >= entry.getValue())
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+            for (String stream : due) {
+                handlePendingList(stream);
+            }
+        }
+
+        /**
+         * 扫描一遍 pending-list：每批之后从最后一条订单之后继续读取，失败的订单留到下一轮，不会反复读取同一批
+         */
+        private void handlePendingList(String stream) {
+            pendingRetryAt.remove(stream);
+            String lastId = "0";
+            while (running) {
+                try {
+                    // 1、获取 pending-list 中的订单 XREADGROUP GROUP g1 c1 COUNT 100 STREAMS stream.orders lastId
+                    List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(
+                            Consumer.from(SECKILL_ORDER_GROUP, consumerName),
+                            StreamReadOptions.empty().count(batchSize),
+                            StreamOffset.create(stream, ReadOffset.from(lastId))
+                    );
+                    // 2、pending-list 已扫描完，结束
+                    if (records == null || records.isEmpty()) {
+                        return;
+                    }
+                    lastId = records.get(records.size() - 1).getId().getValue();
+                    // 3、批量下单并 ACK
+                    if (!handleVoucherOrders(stream, records, true)) {
+                        schedulePendingRetry(stream);
+                    }
+                } catch (Exception e) {
+                    log.error("处理 pending-list 订单异常，stream：{}", stream, e);
+                    schedulePendingRetry(stream);
+                    return;
+                }
+            }
+        }
+
+        private void schedulePendingRetry(String stream) {
+            pendingRetryAt.putIfAbsent(stream, System.currentTimeMillis() + pendingRetryMillis);
+        }
+
+        /**
+         * 批量下单：每张优惠券一个事务，一张优惠券失败不影响其他优惠券
+         * @return 是否全部落库（或转入死信队列）
+         */
+        private boolean handleVoucherOrders(String stream, List<MapRecord<String, Object, Object>> records, boolean fromPendingList) {
+            // 1、pending-list 中的订单查询投递次数 XPENDING stream.orders g1 firstId lastId count c1
+            Map<String, Long> deliveryCounts = fromPendingList ? deliveryCounts(stream, records) : Collections.emptyMap();
+            // 2、解析订单，按优惠券分组；无法解析或投递次数超过上限的订单转入死信队列
+            Map<Long, List<MapRecord<String, Object, Object>>> recordsByVoucher = new LinkedHashMap<>();
+            Map<String, VoucherOrder> orders = new HashMap<>();
+            for (MapRecord<String, Object, Object> record : records) {
+                String recordId = record.getId().getValue();
+                long delivered = deliveryCounts.getOrDefault(recordId, 1L);
+                if (delivered > maxDeliveries) {
+                    deadLetter(stream, record, "投递 " + delivered + " 次仍未落库");
+                    continue;
+                }
+                VoucherOrder voucherOrder = parseVoucherOrder(record);
+                if (voucherOrder == null) {
+                    deadLetter(stream, record, "订单格式错误");
+                    continue;
+                }
+                orders.put(recordId, voucherOrder);
+                recordsByVoucher.computeIfAbsent(voucherOrder.getVoucherId(), id -> new ArrayList<>()).add(record);
+            }
+            // 3、每张优惠券一次批量写入，成功后 ACK XACK stream.orders g1 id...
+            boolean allDone = true;
+            for (Map.Entry<Long, List<MapRecord<String, Object, Object>>> entry : recordsByVoucher.entrySet()) {
+                List<MapRecord<String, Object, Object>> voucherRecords = entry.getValue();
+                try {
+                    proxy.createVoucherOrders(voucherRecords.stream()
+                            .map(record -> orders.get(record.getId().getValue()))
+                            .collect(Collectors.toList()));
+                    acknowledge(stream, voucherRecords);
+                } catch (Exception e) {
+                    log.error("优惠券 {} 的订单批量落库失败，逐单重试", entry.getKey(), e);
+                    // 4、批量失败时逐单写入，只把失败的订单留在 pending-list 中
+                    for (MapRecord<String, Object, Object> record : voucherRecords) {
+                        try {
+                            proxy.createVoucherOrders(Collections.singletonList(orders.get(record.getId().getValue())));
+                            acknowledge(stream, Collections.singletonList(record));
+                        } catch (Exception ex) {
+                            log.error("订单落库失败，留在 pending-list 中等待重试，消息id：{}", record.getId(), ex);
+                            allDone = false;
+                        }
+                    }
+                }
+            }
+            return allDone;
+        }
+
+        private Map<String, Long> deliveryCounts(String stream, List<MapRecord<String, Object, Object>> records) {
+            PendingMessages pendingMessages = stringRedisTemplate.opsForStream().pending(
+                    stream,
+                    Consumer.from(SECKILL_ORDER_GROUP, consumerName),
+                    Range.closed(records.get(0).getId().getValue(), records.get(records.size() - 1).getId().getValue()),
+                    records.size());
+            Map<String, Long> deliveryCounts = new HashMap<>(records.size());
+            for (PendingMessage pendingMessage : pendingMessages) {
+                deliveryCounts.put(pendingMessage.getIdAsString(), pendingMessage.getTotalDeliveryCount());
+            }
+            return deliveryCounts;
+        }
+
+        private VoucherOrder parseVoucherOrder(MapRecord<String, Object, Object> record) {
+            try {
+                VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true);
+                if (voucherOrder.getId() == null || voucherOrder.getUserId() == null || voucherOrder.getVoucherId() == null) {
+                    return null;
+                }
+                return voucherOrder;
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        // 订单原样写入死信队列 stream.orders.dead，附带原消息id和原因，然后 ACK，不再重试
+        private void deadLetter(String stream, MapRecord<String, Object, Object> record, String reason) {
+            Map<Object, Object> value = new LinkedHashMap<>(record.getValue());
+            value.put("sourceId", record.getId().getValue());
+            value.put("reason", reason);
+            stringRedisTemplate.opsForStream().add(SECKILL_ORDER_DEAD_STREAM, value);
+            acknowledge(stream, Collections.singletonList(record));
+            log.error("订单转入死信队列，消息id：{}，原因：{}，订单：{}", record.getId(), reason, record.getValue());
+        }
+
+        private void acknowledge(String stream, List<MapRecord<String, Object, Object>> records) {
+            String[] recordIds = records.stream()
+                    .map(record -> record.getId().getValue())
+                    .toArray(String[]::new);
+            stringRedisTemplate.opsForStream().acknowledge(stream, SECKILL_ORDER_GROUP, recordIds);
+        }
+
+        private void sleep(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
 
 
 
@@ -68,30 +452,66 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Override
     public Result seckillVoucher(Long voucherId) {
 
-        // 1、获取用户
-        Long userId = UserHolder.getUser().getId();
-        Long orderId = redisWorker.nextId("order");
-
-        // 2、执行 lua 脚本
-        Long result = stringRedisTemplate.execute(
-                SECKILL_SCRIPT,
-                Collections.emptyList(),
-                voucherId.toString(), userId.toString(), String.valueOf(orderId));
-        int r = result.intValue();
-
-        // 3、判断结果是否为 0
-        if (r != 0){
-            // 3.1、不为0，代表没有购买资格
-            return Result.fail(r == 1 ? "库存不足" : "不能重复下单");
+        // 1、本地售罄标记，已售罄直接返回
+        if (soldOutVouchers.contains(voucherId)) {
+            return Result.fail("库存不足");
         }
 
-        //TODO 保存阻塞队列
+        // 2、获取用户
+        Long userId = UserHolder.getUser().getId();
+        Long orderId = idGenerator.nextId("order");
+
+        // 3、执行 lua 脚本
+        int r = executeSeckillScript(voucherId, userId, orderId);
+
+        // 4、判断结果是否为 0，不为0，代表没有购买资格
+        switch (r) {
+            case 0:
+                break;
+            case 1:
+                // 4.1、库存不足，设置本地售罄标记并通知其他节点
+                soldOutVouchers.add(voucherId);
+                stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, voucherId.toString());
+                return Result.fail("库存不足");
+            case 2:
+                return Result.fail("不能重复下单");
+            case 3:
+                return Result.fail("秒杀尚未开始！");
+            default:
+                return Result.fail("秒杀已经结束！");
+        }
 
-        // 4、返回订单id
+        // 5、下单信息已由 lua 脚本写入订单 stream，由 VoucherOrderHandler 异步落库
+        // 6、返回订单id
         return Result.ok(orderId);
     }
 
 
+    /**
+     * 执行秒杀脚本。分段库存模式下按用户 hash 选择分段，分段库存不足时依次尝试后续分段
+     * @return 0 成功；1 库存不足；2 重复下单；3 秒杀未开始；4 秒杀已结束
+     */
+    private int executeSeckillScript(Long voucherId, Long userId, Long orderId) {
+        int shards = stockShards.computeIfAbsent(voucherId, id -> {
+            String value = stringRedisTemplate.opsForValue().get(SECKILL_SHARDS_KEY + id);
+            return value == null ? 1 : Integer.parseInt(value);
+        });
+        // 用户固定从同一个分段开始，按相同顺序遍历，保证一人一单：
+        // 用户下单的分段之前的分段在当时已售罄，重复下单时一定会先遍历到下单的分段
+        int first = Math.floorMod(userId.hashCode(), shards);
+        int r = 1;
+        for (int i = 0; i < shards && r == 1; i++) {
+            Long result = stringRedisTemplate.execute(
+                    SECKILL_SCRIPT,
+                    SeckillKeys.scriptKeys(voucherId, shards, (first + i) % shards),
+                    voucherId.toString(), userId.toString(), String.valueOf(orderId),
+                    String.valueOf(System.currentTimeMillis()));
+            r = result.intValue();
+        }
+        return r;
+    }
+
+
     // 不使用 lua 脚本
     /*    @Override
     public Result seckillVoucher(Long voucherId) {
@@ -190,7 +610,7 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         // 6、创建订单
         VoucherOrder voucherOrder = new VoucherOrder();
         // 6.1、设置订单 主键
-        Long orderId = redisWorker.nextId("order");
+        Long orderId = idGenerator.nextId("order");
         voucherOrder.setId(orderId);
         // 6.2、设置订单 用户id
         voucherOrder.setUserId(userId);
@@ -203,4 +623,39 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         return Result.ok(orderId);
     }
 
+    /**
+     * 批量下单（异步消费 stream.orders，消费线程按优惠券分别调用，一张优惠券一个事务）
+     * @param voucherOrders
+     * @return 实际插入的订单数
+     */
+    @Override
+    @Transactional
+    public int createVoucherOrders(List<VoucherOrder> voucherOrders) {
+        int total = 0;
+        // 1、按优惠券分组，每张优惠券一条 insert + 一条 update
+        Map<Long, List<VoucherOrder>> ordersByVoucher = voucherOrders.stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId));
+        for (Map.Entry<Long, List<VoucherOrder>> entry : ordersByVoucher.entrySet()) {
+            Long voucherId = entry.getKey();
+            // 2、一人一单：INSERT IGNORE 依赖 (user_id, voucher_id) 唯一索引去重，重复投递的订单不会重复插入
+            int count = getBaseMapper().insertIgnoreBatch(entry.getValue());
+            if (count == 0) {
+                continue;
+            }
+            // 3、按实际插入数聚合扣减库存 update tb_seckill_voucher set stock = stock - n where voucher_id = ? and stock >= n
+            boolean updateSuccess = seckillVoucherService
+                    .update()
+                    .setSql("stock = stock - " + count)
+                    .eq("voucher_id", voucherId)
+                    .ge("stock", count)
+                    .update();
+            if (!updateSuccess) {
+                // redis 已经预扣库存，数据库库存不足说明两边数据不一致，回滚等待重试
+                throw new IllegalStateException("库存扣减失败，优惠券id：" + voucherId);
+            }
+            total += count;
+        }
+        return total;
+    }
+
 }
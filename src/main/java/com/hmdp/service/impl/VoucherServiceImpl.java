@@ -7,15 +7,26 @@ import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.SeckillKeys;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAMS_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_SHARDS_KEY;
 import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_RESET_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_VOUCHER_KEY;
 
 /**
  * <p>
@@ -54,7 +65,35 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
-        // 保存秒杀库存到 redis 中
-        stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucher.getId(),voucher.getStock().toString());
+        // 保存秒杀库存、秒杀时间到 redis 中（时间为毫秒时间戳，由 lua 脚本校验秒杀是否开始、结束）
+        Map<String, String> voucherMap = new HashMap<>();
+        voucherMap.put("beginTime", toEpochMilli(voucher.getBeginTime()));
+        voucherMap.put("endTime", toEpochMilli(voucher.getEndTime()));
+        int stock = voucher.getStock();
+        // 分段库存：库存均分到多个分段，分段数不超过库存
+        int shards = voucher.getStockShards() == null ? 1 : Math.max(1, Math.min(voucher.getStockShards(), stock));
+        for (int shard = 0; shard < shards; shard++) {
+            String suffix = SeckillKeys.suffix(voucher.getId(), shards, shard);
+            int shardStock = stock / shards + (shard < stock % shards ? 1 : 0);
+            stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + suffix, String.valueOf(shardStock));
+            stringRedisTemplate.opsForHash().putAll(SECKILL_VOUCHER_KEY + suffix, voucherMap);
+            // 分段的订单 stream 登记后由订单消费线程读取
+            if (shards > 1) {
+                stringRedisTemplate.opsForSet().add(SECKILL_ORDER_STREAMS_KEY, SeckillKeys.orderStream(voucher.getId(), shards, shard));
+            }
+        }
+        stringRedisTemplate.opsForValue().set(SECKILL_SHARDS_KEY + voucher.getId(), String.valueOf(shards));
+        // 库存已重置，事务提交后通知所有节点清除本地售罄标记（回滚时不通知）
+        String voucherId = voucher.getId().toString();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                stringRedisTemplate.convertAndSend(SECKILL_STOCK_RESET_CHANNEL, voucherId);
+            }
+        });
+    }
+
+    private static String toEpochMilli(LocalDateTime time) {
+        return String.valueOf(time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
     }
 }
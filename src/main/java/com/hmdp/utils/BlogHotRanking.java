@@ -0,0 +1,141 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Blog;
+import com.hmdp.mapper.BlogMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
+import static com.hmdp.utils.RedisConstants.LOCK_BLOG_HOT_REBUILD_KEY;
+
+/**
+ * 热门博客排行：zset blog:hot，member 为博客 id，score 为热度
+ * 热度 = 点赞数 + 发布时间（epoch 秒）/ decaySeconds，即每晚发布 decaySeconds 秒相当于多 1 个赞（线性时间衰减）
+ * 时间项在发布时固定，点赞、取消点赞只需 ZINCRBY ±1（在 like.lua 中完成）；decaySeconds 为 0 时只按点赞数排序
+ */
+@Slf4j
+@Component
+public class BlogHotRanking {
+
+    /**
+     * 启动重建时每次查询的博客数
+     */
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+    private static final DefaultRedisScript<Long> REBUILD_SCRIPT;
+    static {
+        REBUILD_SCRIPT = new DefaultRedisScript<>();
+        REBUILD_SCRIPT.setLocation(new ClassPathResource("blog-hot-rebuild.lua"));
+        REBUILD_SCRIPT.setResultType(Long.class);
+    }
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Value("${hmdp.blog.hot.decay-seconds:0}")
+    private long decaySeconds;
+
+    /**
+     * 博客的热度
+     */
+    public double score(Integer liked, LocalDateTime createTime) {
+        double score = liked == null ? 0 : liked;
+        if (decaySeconds > 0 && createTime != null) {
+            score += (double) createTime.toEpochSecond(ZoneOffset.UTC) / decaySeconds;
+        }
+        return score;
+    }
+
+    /**
+     * 新增博客
+     */
+    public void add(Blog blog) {
+        LocalDateTime createTime = blog.getCreateTime() != null ? blog.getCreateTime() : LocalDateTime.now();
+        stringRedisTemplate.opsForZSet().add(BLOG_HOT_KEY, blog.getId().toString(), score(blog.getLiked(), createTime));
+    }
+
+    /**
+     * 按热度分页查询博客 id（ZREVRANGE），页码从 1 开始
+     */
+    public List<Long> page(int current, int size) {
+        long start = (long) (current - 1) * size;
+        Set<String> ids = stringRedisTemplate.opsForZSet().reverseRange(BLOG_HOT_KEY, start, start + size - 1);
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return ids.stream().map(Long::valueOf).collect(Collectors.toList());
+    }
+
+    /**
+     * 排行是否已建立
+     */
+    public boolean exists() {
+        return Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_HOT_KEY));
+    }
+
+    /**
+     * 从数据库重建排行，多个节点同时启动时只有一个节点重建
+     * 每批博客由 lua 脚本直接写入 blog:hot：点赞数取点赞 zset 的元素个数，与 like.lua 原子执行，重建期间的点赞不会丢失，也不会重复计入
+     */
+    public void rebuild(BlogMapper blogMapper) {
+        RLock lock = redissonClient.getLock(LOCK_BLOG_HOT_REBUILD_KEY);
+        if (!lock.tryLock()) {
+            log.info("其他节点正在重建热门博客排行，跳过");
+            return;
+        }
+        try {
+            long lastId = 0;
+            long count = 0;
+            while (true) {
+                // 1、按 id 分批查询博客的点赞数、发布时间
+                List<Blog> blogs = blogMapper.selectList(new QueryWrapper<Blog>()
+                        .select("id", "liked", "create_time")
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("limit " + LOAD_BATCH_SIZE));
+                if (blogs.isEmpty()) {
+                    break;
+                }
+                // 2、一次脚本调用写入一批
+                List<String> keys = new ArrayList<>(blogs.size() + 1);
+                List<String> args = new ArrayList<>(blogs.size() * 3);
+                keys.add(BLOG_HOT_KEY);
+                for (Blog blog : blogs) {
+                    keys.add(BLOG_LIKED_KEY + blog.getId());
+                    args.add(blog.getId().toString());
+                    args.add(String.valueOf(blog.getLiked() == null ? 0 : blog.getLiked()));
+                    args.add(String.valueOf(score(0, blog.getCreateTime())));
+                }
+                stringRedisTemplate.execute(REBUILD_SCRIPT, keys, args.toArray());
+                count += blogs.size();
+                if (blogs.size() < LOAD_BATCH_SIZE) {
+                    break;
+                }
+                lastId = blogs.get(blogs.size() - 1).getId();
+            }
+            log.info("热门博客排行重建完成，数量：{}", count);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.hmdp.entity.Blog;
+import com.hmdp.mapper.BlogMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKE_DELTA_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKE_FLUSHING_KEY;
+import static com.hmdp.utils.RedisConstants.LOCK_BLOG_LIKE_FLUSH_KEY;
+
+/**
+ * 点赞数写回数据库（write-behind）
+ * 点赞只写 redis，点赞数的变化由 like.lua 累加到 blog:like:delta；每隔 flushIntervalMillis 把增量 RENAME 为快照 blog:like:flushing，
+ * 每篇博客执行一次 UPDATE tb_blog SET liked = liked + 增量，更新后从快照中删除
+ * 宕机时快照会留在 redis 中，其中的博客无法确定是否已更新，下一次刷新（任意节点、重启后）先按点赞 zset 的 ZCARD 校正这些博客，
+ * 同时丢弃这些博客在新增量中的部分（ZCARD 已包含）
+ * 各节点通过分布式锁保证同一时间只有一个节点刷新
+ */
+@Slf4j
+@Component
+public class BlogLikeFlusher {
+
+    /**
+     * 校正时每次脚本调用处理的博客数
+     */
+    private static final int RECONCILE_BATCH_SIZE = 100;
+
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> RECONCILE_SCRIPT;
+    static {
+        RECONCILE_SCRIPT = new DefaultRedisScript<>();
+        RECONCILE_SCRIPT.setLocation(new ClassPathResource("like-reconcile.lua"));
+        RECONCILE_SCRIPT.setResultType(List.class);
+    }
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private BlogMapper blogMapper;
+
+    @Value("${hmdp.blog.like.flush-interval-millis:1000}")
+    private long flushIntervalMillis;
+
+    private final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "blog-like-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    private void init() {
+        flushExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (Exception e) {
+                log.error("点赞数写回数据库失败", e);
+            }
+        }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() throws InterruptedException {
+        flushExecutor.shutdown();
+        flushExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        // 停机前写回最后一批增量
+        flush();
+    }
+
+    /**
+     * 写回点赞数增量，其他节点正在刷新时跳过
+     */
+    public void flush() {
+        RLock lock = redissonClient.getLock(LOCK_BLOG_LIKE_FLUSH_KEY);
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            // 1、上一次刷新中断，校正快照中的博客
+            if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_LIKE_FLUSHING_KEY))) {
+                reconcile();
+            }
+            // 2、没有新的增量
+            if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_LIKE_DELTA_KEY))) {
+                return;
+            }
+            // 3、增量改名为快照，之后的点赞写入新的增量 hash
+            stringRedisTemplate.rename(BLOG_LIKE_DELTA_KEY, BLOG_LIKE_FLUSHING_KEY);
+            Map<Object, Object> deltas = stringRedisTemplate.opsForHash().entries(BLOG_LIKE_FLUSHING_KEY);
+            // 4、每篇博客一次 UPDATE，更新后从快照中删除
+            for (Map.Entry<Object, Object> e : deltas.entrySet()) {
+                long id = Long.parseLong(e.getKey().toString());
+                long delta = Long.parseLong(e.getValue().toString());
+                if (delta != 0) {
+                    blogMapper.update(null, new UpdateWrapper<Blog>()
+                            .setSql("liked = liked + " + delta)
+                            .eq("id", id));
+                }
+                stringRedisTemplate.opsForHash().delete(BLOG_LIKE_FLUSHING_KEY, e.getKey());
+            }
+            stringRedisTemplate.delete(BLOG_LIKE_FLUSHING_KEY);
+            log.debug("点赞数写回数据库，博客数：{}", deltas.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 快照中剩余的博客可能已经更新过，不能再加增量：点赞数直接设置为点赞 zset 的元素个数
+    // 元素个数已包含之后新增量 hash 中的点赞，由 lua 脚本在读取元素个数的同时删除这些博客的新增量，避免重复累加
+    // 每篇博客校正后才从快照中删除，校正中途宕机时下一次继续校正剩余的博客
+    private void reconcile() {
+        List<String> ids = stringRedisTemplate.opsForHash().keys(BLOG_LIKE_FLUSHING_KEY).stream()
+                .map(Object::toString)
+                .collect(Collectors.toList());
+        for (int i = 0; i < ids.size(); i += RECONCILE_BATCH_SIZE) {
+            List<String> batch = ids.subList(i, Math.min(i + RECONCILE_BATCH_SIZE, ids.size()));
+            // 1、读取点赞数，删除新增量
+            List<String> keys = new ArrayList<>(batch.size() + 1);
+            keys.add(BLOG_LIKE_DELTA_KEY);
+            batch.forEach(id -> keys.add(BLOG_LIKED_KEY + id));
+            @SuppressWarnings("unchecked")
+            List<Long> counts = stringRedisTemplate.execute(RECONCILE_SCRIPT, keys, batch.toArray());
+            // 2、写入数据库，从快照中删除
+            for (int j = 0; j < batch.size(); j++) {
+                blogMapper.update(null, new UpdateWrapper<Blog>()
+                        .set("liked", counts.get(j))
+                        .eq("id", Long.parseLong(batch.get(j))));
+                stringRedisTemplate.opsForHash().delete(BLOG_LIKE_FLUSHING_KEY, batch.get(j));
+            }
+        }
+        stringRedisTemplate.delete(BLOG_LIKE_FLUSHING_KEY);
+        log.warn("上一次点赞数写回中断，已按点赞记录校正，博客数：{}", ids.size());
+    }
+}
@@ -3,21 +3,47 @@ package com.hmdp.utils;
 import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.RandomUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
-import com.hmdp.entity.RedisData;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.hmdp.entity.Shop;
+import com.hmdp.utils.codec.CacheCodec;
+import com.hmdp.utils.codec.CacheSerializer;
+import com.hmdp.utils.codec.CacheValue;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.CACHE_NULL_TTL;
 import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
 import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TTL;
 
@@ -28,22 +54,312 @@ public class CacheClient {
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    /**
+     * 缓存值的读写，value 为 CacheSerializer 编码后的字节
+     */
+    @Resource
+    private RedisTemplate<String, byte[]> cacheRedisTemplate;
 
-    // 方法一、将任意Java对象序列化为json并存储在string类型的key中，并且可以设置TTL过期时间
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Autowired
+    private CacheMetrics cacheMetrics;
+
+    @Autowired
+    private HotKeyDetector hotKeyDetector;
+
+    /**
+     * 注册为 bean 的编码器，未注册编码器的类型使用 JSON
+     */
+    @Autowired(required = false)
+    private List<CacheCodec<?>> cacheCodecs = Collections.emptyList();
+
+    private final CacheSerializer cacheSerializer = new CacheSerializer();
+
+    /**
+     * redis 中的空值标记（缓存穿透）
+     */
+    private static final byte[] EMPTY_VALUE = new byte[0];
+
+    private static final ScheduledExecutorService DELAYED_DELETE_EXECUTOR = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * 延时双删的第二次删除延迟（毫秒），应大于一次读请求查询数据库并写回缓存的耗时
+     */
+    @Value("${hmdp.cache.double-delete-delay-millis:1000}")
+    private long doubleDeleteDelayMillis;
+
+    /**
+     * 逻辑过期缓存的提前刷新，同时提供有界的重建线程池
+     */
+    private RefreshAheadScheduler refreshAheadScheduler;
+
+    /**
+     * 逻辑过期前多少秒开始提前刷新热点 key
+     */
+    @Value("${hmdp.cache.refresh-ahead.ahead-seconds:10}")
+    private long refreshAheadSeconds;
+
+    /**
+     * 访问频率（每秒衰减 20%）达到该值视为热点 key
+     */
+    @Value("${hmdp.cache.refresh-ahead.hot-frequency:10}")
+    private double refreshAheadHotFrequency;
+
+    /**
+     * 最多跟踪访问频率的 key 数量
+     */
+    @Value("${hmdp.cache.refresh-ahead.maximum-keys:10000}")
+    private int refreshAheadMaximumKeys;
+
+    /**
+     * 重建线程池：最大并发数、等待队列长度
+     */
+    @Value("${hmdp.cache.rebuild.max-concurrency:4}")
+    private int rebuildMaxConcurrency;
+
+    @Value("${hmdp.cache.rebuild.queue-capacity:100}")
+    private int rebuildQueueCapacity;
+
+    /**
+     * 过期时间随机增加 0 ~ ttlJitterRatio 倍，避免同时写入的 key 同时过期（缓存雪崩）
+     */
+    @Value("${hmdp.cache.ttl-jitter-ratio:0.1}")
+    private double ttlJitterRatio;
+
+    /**
+     * 重建熔断：最多同时查询数据库的重建数、连续失败多少次后熔断、熔断时长
+     */
+    @Value("${hmdp.cache.breaker.max-concurrent-loads:20}")
+    private int breakerMaxConcurrentLoads;
+
+    @Value("${hmdp.cache.breaker.failure-threshold:50}")
+    private int breakerFailureThreshold;
+
+    @Value("${hmdp.cache.breaker.open-seconds:5}")
+    private long breakerOpenSeconds;
+
+    private RebuildCircuitBreaker rebuildCircuitBreaker;
+
+    /**
+     * 互斥锁重建：获取锁失败后的最大重试次数、重试间隔
+     */
+    private static final int MUTEX_MAX_RETRIES = 20;
+    private static final long MUTEX_RETRY_INTERVAL_MS = 50;
+
+    /**
+     * 本节点的请求合并
+     */
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    /**
+     * 各缓存前缀对应的布隆过滤器，判定 id 一定不存在时不再查询 redis 和数据库
+     */
+    private final Map<String, RedisBloomFilter> bloomFilters = new ConcurrentHashMap<>();
+
+    /**
+     * 本地缓存中的空值标记（缓存穿透）
+     */
+    private static final Object NULL_VALUE = new Object();
+
+    /**
+     * 本地缓存最大条数
+     */
+    @Value("${hmdp.cache.local.maximum-size:10000}")
+    private long localMaximumSize;
+
+    /**
+     * 本地缓存写入后的过期时间（秒），广播失效消息丢失时，本地缓存最多不一致这么久
+     */
+    @Value("${hmdp.cache.local.expire-seconds:30}")
+    private long localExpireSeconds;
+
+    /**
+     * 本地缓存（一级缓存），key 与 redis key 相同
+     * value：反序列化后的对象；逻辑过期的 key 为 CacheValue；空值为 NULL_VALUE
+     */
+    private Cache<String, Object> localCache;
+
+    /**
+     * 当前节点标识，忽略自己发出的失效消息
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @PostConstruct
+    private void init() {
+        cacheCodecs.forEach(cacheSerializer::register);
+        refreshAheadScheduler = new RefreshAheadScheduler(TimeUnit.SECONDS.toMillis(refreshAheadSeconds),
+                refreshAheadHotFrequency, refreshAheadMaximumKeys, rebuildMaxConcurrency, rebuildQueueCapacity);
+        rebuildCircuitBreaker = new RebuildCircuitBreaker(breakerMaxConcurrentLoads, breakerFailureThreshold,
+                TimeUnit.SECONDS.toMillis(breakerOpenSeconds));
+        // 重建线程池、请求合并的监控指标
+        MeterRegistry meterRegistry = cacheMetrics.getMeterRegistry();
+        Gauge.builder("hmdp.cache.rebuild.queue.size", refreshAheadScheduler, RefreshAheadScheduler::queueSize)
+                .register(meterRegistry);
+        Gauge.builder("hmdp.cache.rebuild.active", refreshAheadScheduler, RefreshAheadScheduler::activeCount)
+                .register(meterRegistry);
+        Gauge.builder("hmdp.cache.refresh-ahead.tracked.keys", refreshAheadScheduler, RefreshAheadScheduler::trackedKeys)
+                .register(meterRegistry);
+        Gauge.builder("hmdp.cache.single-flight.in-flight", singleFlight, SingleFlight::inFlight)
+                .register(meterRegistry);
+        Gauge.builder("hmdp.cache.breaker.open", rebuildCircuitBreaker, b -> b.isOpen() ? 1 : 0)
+                .register(meterRegistry);
+        Gauge.builder("hmdp.cache.breaker.loads", rebuildCircuitBreaker, RebuildCircuitBreaker::inUse)
+                .register(meterRegistry);
+        localCache = Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterWrite(localExpireSeconds, TimeUnit.SECONDS)
+                .build();
+        // 订阅其他节点的缓存失效消息：nodeId:key
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            int index = body.indexOf(':');
+            if (!nodeId.equals(body.substring(0, index))) {
+                invalidateLocalOnly(body.substring(index + 1));
+            }
+        }, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+    }
+
+    @PreDestroy
+    private void destroy() {
+        refreshAheadScheduler.shutdown();
+        DELAYED_DELETE_EXECUTOR.shutdown();
+    }
+
+    // 注册布隆过滤器，该前缀的查询先经过布隆过滤器
+    public void registerBloomFilter(String keyPrefix, RedisBloomFilter bloomFilter) {
+        bloomFilters.put(keyPrefix, bloomFilter);
+    }
+
+    // 布隆过滤器判断 id 是否可能存在，未注册布隆过滤器的前缀全部放行
+    private boolean mightContain(String keyPrefix, Object id) {
+        RedisBloomFilter bloomFilter = bloomFilters.get(keyPrefix);
+        if (bloomFilter == null || bloomFilter.mightContain(id)) {
+            return true;
+        }
+        log.debug("布隆过滤器拦截不存在的 id：{}{}", keyPrefix, id);
+        cacheMetrics.request(keyPrefix, CacheMetrics.REJECTED);
+        return false;
+    }
+
+    // 方法一、将任意Java对象编码后存储在string类型的key中，并且可以设置TTL过期时间（随机增加 0 ~ ttlJitterRatio 倍）
     public void set(String key, Object value, Long time, TimeUnit unit) {
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        cacheRedisTemplate.opsForValue().set(key, cacheSerializer.serialize(value, 0), jitter(time, unit), TimeUnit.MILLISECONDS);
+        invalidateLocal(key);
+    }
+
+    // 写入空值，解决缓存穿透
+    private void setNull(String key, Long time, TimeUnit unit) {
+        cacheRedisTemplate.opsForValue().set(key, EMPTY_VALUE, jitter(time, unit), TimeUnit.MILLISECONDS);
+        invalidateLocal(key);
+    }
+
+    // 加上随机抖动后的过期时间（毫秒）
+    private long jitter(Long time, TimeUnit unit) {
+        long millis = unit.toMillis(time);
+        long bound = (long) (millis * ttlJitterRatio);
+        return bound <= 0 ? millis : millis + ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    // 熔断保护的数据库查询：熔断中或同时查询数据库的重建过多时快速失败，抛出 CacheRebuildRejectedException
+    private <T, R> R loadFromDb(String key, T arg, Function<T, R> dbFallback) {
+        if (!rebuildCircuitBreaker.tryAcquire()) {
+            cacheMetrics.breakerRejected(key);
+            throw new CacheRebuildRejectedException(key);
+        }
+        try {
+            R r = dbFallback.apply(arg);
+            rebuildCircuitBreaker.onSuccess();
+            return r;
+        } catch (RuntimeException e) {
+            rebuildCircuitBreaker.onFailure();
+            throw e;
+        } finally {
+            rebuildCircuitBreaker.release();
+        }
+    }
+
+    // 删除缓存，同时失效所有节点的本地缓存
+    public void delete(String key) {
+        stringRedisTemplate.delete(key);
+        invalidateLocal(key);
+    }
+
+    // 延时双删：立即删除，并在 doubleDeleteDelayMillis 后再删除一次
+    // 删除与第二次删除之间，读请求可能把旧数据（读到未提交或主从延迟的数据）重新写回缓存，由第二次删除清理
+    public void deleteTwice(String key) {
+        delete(key);
+        DELAYED_DELETE_EXECUTOR.schedule(() -> {
+            try {
+                delete(key);
+            } catch (Exception e) {
+                log.error("延时删除缓存失败：{}", key, e);
+            }
+        }, doubleDeleteDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // 读取本地缓存：热点 key 先查本地固定缓存，同时记录访问用于热点探测
+    private Object getLocal(String key) {
+        if (hotKeyDetector.record(key)) {
+            Object pinned = hotKeyDetector.getPinned(key);
+            if (pinned != null) {
+                return pinned;
+            }
+        }
+        return localCache.getIfPresent(key);
+    }
+
+    // 写入本地缓存，热点 key 同时固定到本地固定缓存
+    private void putLocal(String key, Object value) {
+        localCache.put(key, value);
+        hotKeyDetector.pinIfHot(key, value);
+    }
+
+    // 只失效本节点的本地缓存
+    private void invalidateLocalOnly(String key) {
+        localCache.invalidate(key);
+        hotKeyDetector.invalidate(key);
+    }
+
+    // 失效本地缓存（包括热点 key 的本地固定缓存），并广播给其他节点
+    public void invalidateLocal(String key) {
+        invalidateLocalOnly(key);
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, nodeId + ":" + key);
     }
 
-    // 方法二、将任意Java对象序列化为json并存储在string类型的key中，并且可以设置逻辑过期时间，用于处理缓存击穿问题
+    // 方法二、将任意Java对象编码后存储在string类型的key中，并且可以设置逻辑过期时间，用于处理缓存击穿问题
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
-        // 设置逻辑过期时间
-        RedisData redisData = new RedisData();
-        redisData.setData(value);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));     // 将 Long time, TimeUnit unit 转为秒
+        writeWithLogicalExpire(key, value, time, unit);
+    }
+
+    // 写入逻辑过期缓存，返回逻辑过期时间
+    private long writeWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
+        // 设置逻辑过期时间（加随机抖动），以 epoch 毫秒写入头部
+        long expireAt = System.currentTimeMillis() + jitter(time, unit);
         // 写入redis
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        cacheRedisTemplate.opsForValue().set(key, cacheSerializer.serialize(value, expireAt));
+        invalidateLocal(key);
+        return expireAt;
+    }
+
+    // 读取 redis 缓存：null 表示未命中（包括编码已变更无法读取的值），空值返回 NULL_VALUE
+    private Object getFromRedis(String key, Class<?> type) {
+        return decode(cacheRedisTemplate.opsForValue().get(key), type);
+    }
 
+    private Object decode(byte[] bytes, Class<?> type) {
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes.length == 0) {
+            return NULL_VALUE;
+        }
+        CacheValue cacheValue = cacheSerializer.deserialize(bytes, type);
+        if (cacheValue == null) {
+            return null;
+        }
+        return cacheValue.getData() == null ? NULL_VALUE : cacheValue.getData();
     }
 
 
@@ -52,41 +368,50 @@ public class CacheClient {
 
         // 商铺 key
         String key = keyPrefix + id;
-        // 1、从 redis 中查询商铺缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
-
-        // 2、判断是否存在。是否为空串
-        if (StrUtil.isNotBlank(json)) {
-            // 3、存在，则返回商城信息
-            // json 反序列化 到 Shop对象
-            return JSONUtil.toBean(json, type);
+        // 0、先查本地缓存
+        Object local = getLocal(key);
+        if (local != null) {
+            cacheMetrics.request(keyPrefix, local == NULL_VALUE ? CacheMetrics.NULL_HIT : CacheMetrics.LOCAL_HIT);
+            return local == NULL_VALUE ? null : type.cast(local);
         }
-
-        // 缓存是否命中
-        // 解决缓存穿透。缓存命中，商铺是否为空值
-        if (json != null) {
-            // ？？？
+        // 0.1、布隆过滤器判断 id 一定不存在，直接返回
+        if (!mightContain(keyPrefix, id)) {
             return null;
         }
+        // 1、从 redis 中查询商铺缓存
+        Object cached = getFromRedis(key, type);
+
+        // 2、判断是否命中
+        if (cached != null) {
+            // 3、命中，写入本地缓存并返回商城信息
+            // 解决缓存穿透。缓存命中，商铺可能为空值
+            cacheMetrics.request(keyPrefix, cached == NULL_VALUE ? CacheMetrics.NULL_HIT : CacheMetrics.HIT);
+            putLocal(key, cached);
+            return cached == NULL_VALUE ? null : type.cast(cached);
+        }
+        cacheMetrics.request(keyPrefix, CacheMetrics.MISS);
+        Function<ID, R> timedDbFallback = cacheMetrics.timed(keyPrefix, dbFallback);
 
-        // 4、不存在，根据 id 查询数据库
-        R r = dbFallback.apply(id);
-        log.info("根据 id 查询数据库成功！");
+        // 4、不存在，合并本节点对同一个 key 的并发请求，只有一个线程查询数据库
+        return singleFlight.execute(key, () -> {
+            // 4.1、根据 id 查询数据库（熔断中快速失败）
+            R r = loadFromDb(key, id, timedDbFallback);
+            log.info("根据 id 查询数据库成功！");
 
-        // 5、不存在，返回 空值
-        if (r == null) {
-            // 解决缓存穿透。将空值写入 redis
-            set(key,"",time,unit);
-            // 返回错误信息
-            return null;
-        }
+            // 5、不存在，返回 空值
+            if (r == null) {
+                // 解决缓存穿透。将空值写入 redis
+                setNull(key,time,unit);
+                // 返回错误信息
+                return null;
+            }
 
-        // 6、存在，写入 redis
-        // JSONUtil.toJsonStr(r)。将 对象 序列化为 Json
-        set(key,JSONUtil.toJsonStr(r),time,unit);
+            // 6、存在，写入 redis
+            set(key,r,time,unit);
 
-        // 7、返回
-        return r;
+            // 7、返回
+            return r;
+        });
     }
 
 
@@ -95,109 +420,356 @@ public class CacheClient {
     public <R,ID> R queryWithLogicalExpire(String keyPrefix,ID id,Class<R> type,Function<ID,R> dbFallback,Long time,TimeUnit unit) {
         // 商铺 key
         String key = keyPrefix + id;
-        // 1、从 redis 中查询商铺缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        // 0、先查本地缓存
+        dbFallback = cacheMetrics.timed(keyPrefix, dbFallback);
+        CacheValue cacheValue = (CacheValue) getLocal(key);
+        if (cacheValue != null) {
+            cacheMetrics.request(keyPrefix, CacheMetrics.LOCAL_HIT);
+        } else {
+            // 0.1、布隆过滤器判断 id 一定不存在，直接返回
+            if (!mightContain(keyPrefix, id)) {
+                return null;
+            }
+            // 1、从 redis 中查询商铺缓存
+            byte[] bytes = cacheRedisTemplate.opsForValue().get(key);
+
+            // 2、判断是否为空值
+            if (bytes != null && bytes.length == 0) {
+                // 2、空值，返回空
+                cacheMetrics.request(keyPrefix, CacheMetrics.NULL_HIT);
+                return null;
+            }
+
+            // 3、缓存命中。解码头部的逻辑过期时间和数据
+            cacheValue = bytes == null ? null : cacheSerializer.deserialize(bytes, type);
+            if (cacheValue == null) {
+                // 3.1、未命中（写操作删除了缓存，或编码已变更），同步重建，本节点同一个 key 只查询一次数据库
+                cacheMetrics.request(keyPrefix, CacheMetrics.MISS);
+                Function<ID, R> load = dbFallback;
+                return singleFlight.execute(key, () -> loadWithLogicalExpire(key, id, load, time, unit));
+            }
+            cacheMetrics.request(keyPrefix, CacheMetrics.HIT);
+            putLocal(key, cacheValue);
+        }
+        return checkLogicalExpire(key, id, cacheValue, type, dbFallback, time, unit);
+    }
 
-        // 2、判断是否存在。是否为空串
-        if (StrUtil.isBlank(json)) {
-            // 2、存在，返回空
+    // 查询数据库并以逻辑过期写入 redis，不存在时写入空值
+    private <R,ID> R loadWithLogicalExpire(String key, ID id, Function<ID,R> dbFallback, Long time, TimeUnit unit) {
+        R r = loadFromDb(key, id, dbFallback);
+        if (r == null) {
+            setNull(key, CACHE_NULL_TTL, TimeUnit.MINUTES);
             return null;
         }
+        writeWithLogicalExpire(key, r, time, unit);
+        return r;
+    }
 
-        // 3、缓存命中。需要先把json反序列化为对象
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
-        LocalDateTime expireTime = redisData.getExpireTime();
-        // 4、判断是否过期
-        if (expireTime.isAfter(LocalDateTime.now())) {
-            // 4.1、未过期，直接返回店铺信息
+    // 判断逻辑过期：未过期直接返回；已过期返回旧数据，并异步重建缓存
+    private <R,ID> R checkLogicalExpire(String key, ID id, CacheValue cacheValue, Class<R> type, Function<ID,R> dbFallback, Long time, TimeUnit unit) {
+        R r = type.cast(cacheValue.getData());
+        // 4、记录访问频率，热点 key 在逻辑过期前由后台提前刷新
+        refreshAheadScheduler.record(key, cacheValue.getExpireAt(),
+                () -> refreshLogicalExpire(key, id, dbFallback, time, unit));
+        // 5、判断是否过期
+        if (cacheValue.getExpireAt() > System.currentTimeMillis()) {
+            // 5.1、未过期，直接返回店铺信息
             return r;
         }
-        // 4.2、已过期。需要重建缓存
-        // 5、重建缓存
-        // 5.1、获取互斥锁
+        // 5.2、已过期（冷 key，或提前刷新未来得及）。需要重建缓存
+        cacheMetrics.staleServed(key);
+        // 5.3、重建熔断中，只返回旧数据，不再重建
+        if (rebuildCircuitBreaker.isOpen()) {
+            cacheMetrics.rebuild(key, CacheMetrics.TRIGGER_BREAKER_OPEN);
+            return r;
+        }
+        // 6、重建缓存
+        // 6.1、获取互斥锁
         String lockKey = RedisConstants.LOCK_SHOP_KEY + id;
         boolean lockStatus = tryLock(lockKey);
-        // 5.2、判断锁是否获取成功
-        if (lockStatus) {
-            // 5.3、锁获取成功。开启独立线程，实现缓存重建。
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
+        // 6.2、判断锁是否获取成功
+        if (!lockStatus) {
+            cacheMetrics.lockContention(key);
+        } else {
+            // 6.3、锁获取成功。提交到有界的重建线程池，实现缓存重建。
+            boolean submitted = refreshAheadScheduler.submit(() -> {
                 // 重建缓存
                 try {
                     // 查数据库
-                    R r1 = dbFallback.apply(id);
+                    R r1 = loadFromDb(key, id, dbFallback);
                     // 存入缓存
                     setWithLogicalExpire(key,r1,time,unit);
+                } catch (CacheRebuildRejectedException e) {
+                    log.warn("重建缓存被熔断拒绝，继续返回旧数据：{}", key);
                 } catch (Exception e) {
-                    throw new RuntimeException(e);
+                    log.error("重建缓存失败：{}", key, e);
                 } finally {
                     unLock(lockKey);
                 }
             });
+            // 6.4、线程池已满，释放锁，由后续请求重试
+            if (!submitted) {
+                unLock(lockKey);
+            }
+            cacheMetrics.rebuild(key, submitted ? CacheMetrics.TRIGGER_READ : CacheMetrics.TRIGGER_REJECTED);
         }
         // 7、返回过期的商品数据
         return r;
     }
 
+    // 提前刷新逻辑过期缓存，返回新的逻辑过期时间；其他节点正在重建时返回 -1
+    private <R,ID> long refreshLogicalExpire(String key, ID id, Function<ID,R> dbFallback, Long time, TimeUnit unit) {
+        if (rebuildCircuitBreaker.isOpen()) {
+            return -1;
+        }
+        String lockKey = RedisConstants.LOCK_SHOP_KEY + id;
+        if (!tryLock(lockKey)) {
+            cacheMetrics.lockContention(key);
+            return -1;
+        }
+        try {
+            // 其他节点已经刷新过，无需重复查询数据库
+            long expireAt = CacheSerializer.readExpireAt(cacheRedisTemplate.opsForValue().get(key));
+            if (expireAt - System.currentTimeMillis() > TimeUnit.SECONDS.toMillis(refreshAheadSeconds)) {
+                return expireAt;
+            }
+            cacheMetrics.rebuild(key, CacheMetrics.TRIGGER_REFRESH_AHEAD);
+            return writeWithLogicalExpire(key, loadFromDb(key, id, dbFallback), time, unit);
+        } finally {
+            unLock(lockKey);
+        }
+    }
+
 
     // 方法五、根据指定的key查询缓存，并反序列化为指定类型，需要利用 返回空值 + 互斥锁 解决缓存击穿问题
     public <R,ID> R queryWithMutex(String keyPrefix ,ID id,Class<R> type,Function<ID,R> dbFallback,Long time, TimeUnit unit) {
         // 商铺 key
         String key = keyPrefix + id;
+        // 0、先查本地缓存
+        Object local = getLocal(key);
+        if (local != null) {
+            cacheMetrics.request(keyPrefix, local == NULL_VALUE ? CacheMetrics.NULL_HIT : CacheMetrics.LOCAL_HIT);
+            return local == NULL_VALUE ? null : type.cast(local);
+        }
+        // 0.1、布隆过滤器判断 id 一定不存在，直接返回
+        if (!mightContain(keyPrefix, id)) {
+            return null;
+        }
         // 1、从 redis 中查询商铺缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
-
-        // 2、判断是否存在。是否为空串
-        if (StrUtil.isNotBlank(json)) {
-            // 3、存在，则返回商城信息
-            // json 反序列化 到 对象
-            return JSONUtil.toBean(json, type);
+        Object cached = getFromRedis(key, type);
+
+        // 2、判断是否命中
+        if (cached != null) {
+            // 3、命中，写入本地缓存并返回商城信息
+            // 解决缓存穿透。缓存命中，商铺可能为空值
+            cacheMetrics.request(keyPrefix, cached == NULL_VALUE ? CacheMetrics.NULL_HIT : CacheMetrics.HIT);
+            putLocal(key, cached);
+            return cached == NULL_VALUE ? null : type.cast(cached);
         }
+        cacheMetrics.request(keyPrefix, CacheMetrics.MISS);
+        Function<ID, R> timedDbFallback = cacheMetrics.timed(keyPrefix, dbFallback);
+
+        // 4、实现缓存重构：合并本节点对同一个 key 的并发请求，只有一个线程去竞争互斥锁
+        return singleFlight.execute(key, () -> rebuildWithMutex(key, id, type, timedDbFallback, time, unit));
+    }
 
-        // 缓存是否命中
+    // 互斥锁重建缓存，获取锁失败时等待其他节点重建，最多重试 MUTEX_MAX_RETRIES 次
+    private <R,ID> R rebuildWithMutex(String key, ID id, Class<R> type, Function<ID,R> dbFallback, Long time, TimeUnit unit) {
         String lockKey = RedisConstants.LOCK_SHOP_KEY + id;
-        R r = null;
-        try {
-            // 解决缓存穿透。缓存命中，商铺是否为空值
-            if (json != null) {
-                // ？？？
-                return null;
-            }
-            // 4、实现缓存重构
+        for (int i = 0; i < MUTEX_MAX_RETRIES; i++) {
             // 4.1、获取互斥锁
             boolean lockStatus = tryLock(lockKey);
             // 4.2、判断锁是否获取成功
-            if (!lockStatus) {
-                // 4.3、获取锁失败，休眠一段时间
-                Thread.sleep(50);
-                return queryWithMutex(keyPrefix ,id,type,dbFallback,time,unit);
-            }
-            // 4.4、获取锁成功，根据 id 查询数据库
-            r = dbFallback.apply(id);
-            Thread.sleep(200);      // 休眠方便测试，模拟重建的延时
-            log.info("根据 id 查询数据库成功！");
-
-            // 4.5、将商铺数据写入 redis
-            if (r == null) {
-                // 解决缓存穿透。将空值写入 redis
-                stringRedisTemplate.opsForValue().set(key, "", time,unit);
-                // 返回错误信息
-                return null;
+            if (lockStatus) {
+                try {
+                    // 4.4、获取锁成功，再次检查缓存是否已被其他节点重建
+                    Object cached = getFromRedis(key, type);
+                    if (cached != null) {
+                        return cached == NULL_VALUE ? null : type.cast(cached);
+                    }
+                    // 4.5、根据 id 查询数据库
+                    return loadAndSet(key, id, dbFallback, time, unit);
+                } finally {
+                    unLock(lockKey);
+                }
             }
-            // 6、存在，写入 redis
-            // 将 对象 序列化为 Json，添加过期时间：30分钟
-            stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(r), time,unit);
+            // 4.3、获取锁失败，休眠一段时间，再查询缓存是否已被其他节点重建
+            cacheMetrics.lockContention(key);
+            try {
+                Thread.sleep(MUTEX_RETRY_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            Object cached = getFromRedis(key, type);
+            if (cached != null) {
+                return cached == NULL_VALUE ? null : type.cast(cached);
+            }
+        }
+        // 4.6、重试耗尽（持锁节点重建过慢），直接查询数据库，单节点同一 key 只有一个线程会走到这里
+        log.warn("等待缓存重建超时，直接查询数据库：{}", key);
+        return loadFromDb(key, id, dbFallback);
+    }
 
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        } finally {
-            unLock(lockKey);
+    private <R,ID> R loadAndSet(String key, ID id, Function<ID,R> dbFallback, Long time, TimeUnit unit) {
+        R r = loadFromDb(key, id, dbFallback);
+        log.info("根据 id 查询数据库成功！");
+
+        // 将商铺数据写入 redis
+        if (r == null) {
+            // 解决缓存穿透。将空值写入 redis
+            setNull(key, time, unit);
+            // 返回错误信息
+            return null;
         }
+        // 6、存在，写入 redis
+        // 将 对象 编码，添加过期时间：30分钟
+        set(key, r, time, unit);
         // 7、返回
         return r;
     }
 
 
+    // 方法六、批量查询：一次 MGET 查询缓存，未命中的 id 一次查询数据库，并用管道批量写回，利用缓存空值的方式解决缓存穿透问题
+    // 返回值按 ids 的顺序，跳过不存在的 id
+    public <R, ID> List<R> queryBatch(String keyPrefix, List<ID> ids, Class<R> type,
+                                      Function<List<ID>, Map<ID, R>> dbBatchFallback, Long time, TimeUnit unit) {
+        return queryBatch(keyPrefix, ids, type, dbBatchFallback, time, unit, false);
+    }
+
+    // 方法七、批量查询逻辑过期的缓存：已过期的返回旧数据并异步重建；未命中的 id 一次查询数据库，以逻辑过期批量写回
+    public <R, ID> List<R> queryBatchWithLogicalExpire(String keyPrefix, List<ID> ids, Class<R> type,
+                                                       Function<List<ID>, Map<ID, R>> dbBatchFallback, Long time, TimeUnit unit) {
+        return queryBatch(keyPrefix, ids, type, dbBatchFallback, time, unit, true);
+    }
+
+    private <R, ID> List<R> queryBatch(String keyPrefix, List<ID> ids, Class<R> type, Function<List<ID>, Map<ID, R>> dbBatchFallback,
+                                       Long time, TimeUnit unit, boolean logicalExpire) {
+        // 单个 id 的重建（逻辑过期）
+        Function<ID, R> dbFallback = cacheMetrics.timed(keyPrefix,
+                id -> dbBatchFallback.apply(Collections.singletonList(id)).get(id));
+        Map<ID, R> result = new HashMap<>(ids.size() * 2);
+
+        // 1、先查本地缓存，布隆过滤器过滤一定不存在的 id
+        List<ID> redisIds = new ArrayList<>();
+        for (ID id : ids) {
+            String key = keyPrefix + id;
+            Object local = getLocal(key);
+            if (local == null) {
+                if (mightContain(keyPrefix, id)) {
+                    redisIds.add(id);
+                }
+            } else if (logicalExpire) {
+                cacheMetrics.request(keyPrefix, CacheMetrics.LOCAL_HIT);
+                result.put(id, checkLogicalExpire(key, id, (CacheValue) local, type, dbFallback, time, unit));
+            } else if (local != NULL_VALUE) {
+                cacheMetrics.request(keyPrefix, CacheMetrics.LOCAL_HIT);
+                result.put(id, type.cast(local));
+            } else {
+                cacheMetrics.request(keyPrefix, CacheMetrics.NULL_HIT);
+            }
+        }
+
+        // 2、一次 MGET 查询 redis
+        List<ID> missIds = new ArrayList<>();
+        if (!redisIds.isEmpty()) {
+            List<String> keys = redisIds.stream().map(id -> keyPrefix + id).collect(Collectors.toList());
+            List<byte[]> values = cacheRedisTemplate.opsForValue().multiGet(keys);
+            for (int i = 0; i < redisIds.size(); i++) {
+                ID id = redisIds.get(i);
+                String key = keys.get(i);
+                byte[] bytes = values.get(i);
+                if (logicalExpire) {
+                    // 2.1、逻辑过期：空值表示不存在；未过期直接返回，已过期返回旧数据并异步重建
+                    if (bytes != null && bytes.length == 0) {
+                        cacheMetrics.request(keyPrefix, CacheMetrics.NULL_HIT);
+                        continue;
+                    }
+                    CacheValue cacheValue = bytes == null ? null : cacheSerializer.deserialize(bytes, type);
+                    if (cacheValue == null) {
+                        cacheMetrics.request(keyPrefix, CacheMetrics.MISS);
+                        missIds.add(id);
+                        continue;
+                    }
+                    cacheMetrics.request(keyPrefix, CacheMetrics.HIT);
+                    putLocal(key, cacheValue);
+                    result.put(id, checkLogicalExpire(key, id, cacheValue, type, dbFallback, time, unit));
+                } else {
+                    // 2.2、缓存穿透：命中空值直接跳过
+                    Object cached = decode(bytes, type);
+                    if (cached == null) {
+                        cacheMetrics.request(keyPrefix, CacheMetrics.MISS);
+                        missIds.add(id);
+                        continue;
+                    }
+                    cacheMetrics.request(keyPrefix, cached == NULL_VALUE ? CacheMetrics.NULL_HIT : CacheMetrics.HIT);
+                    putLocal(key, cached);
+                    if (cached != NULL_VALUE) {
+                        result.put(id, type.cast(cached));
+                    }
+                }
+            }
+        }
+        if (missIds.isEmpty()) {
+            return toList(ids, result);
+        }
+
+        // 3、未命中的 id 一次查询数据库（熔断中快速失败）
+        Map<ID, R> loaded = loadFromDb(keyPrefix, missIds, cacheMetrics.timed(keyPrefix, dbBatchFallback));
+        log.info("批量查询数据库成功！数量：{}", missIds.size());
+
+        // 4、管道批量写回 redis，不存在的 id 写入空值
+        writeBatch(keyPrefix, missIds, loaded, time, unit, logicalExpire);
+        for (ID id : missIds) {
+            result.put(id, loaded.get(id));
+        }
+
+        // 5、按 ids 的顺序返回
+        return toList(ids, result);
+    }
+
+    // 方法八、批量写入逻辑过期缓存（缓存预热），每个 key 的逻辑过期时间加随机抖动，错开过期
+    public <ID> void setBatchWithLogicalExpire(String keyPrefix, Map<ID, ?> values, Long time, TimeUnit unit) {
+        writeBatch(keyPrefix, values.keySet(), values, time, unit, true);
+    }
+
+    // 管道批量写入，ids 中没有值的写入空值，并广播失效各节点的本地缓存
+    private <ID> void writeBatch(String keyPrefix, Collection<ID> ids, Map<ID, ?> values, Long time, TimeUnit unit, boolean logicalExpire) {
+        long now = System.currentTimeMillis();
+        byte[] channel = CACHE_INVALIDATE_CHANNEL.getBytes(StandardCharsets.UTF_8);
+        cacheRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (ID id : ids) {
+                String key = keyPrefix + id;
+                byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+                Object value = values.get(id);
+                if (value == null) {
+                    // 与单个查询一致：逻辑过期模式的空值按 CACHE_NULL_TTL 过期，不跟随实体的逻辑过期时间
+                    long nullTtl = logicalExpire ? jitter(CACHE_NULL_TTL, TimeUnit.MINUTES) : jitter(time, unit);
+                    connection.set(rawKey, EMPTY_VALUE, Expiration.milliseconds(nullTtl), RedisStringCommands.SetOption.UPSERT);
+                } else if (logicalExpire) {
+                    connection.set(rawKey, cacheSerializer.serialize(value, now + jitter(time, unit)));
+                } else {
+                    connection.set(rawKey, cacheSerializer.serialize(value, 0), Expiration.milliseconds(jitter(time, unit)), RedisStringCommands.SetOption.UPSERT);
+                }
+                invalidateLocalOnly(key);
+                connection.publish(channel, (nodeId + ":" + key).getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+    }
+
+    private static <R, ID> List<R> toList(List<ID> ids, Map<ID, R> result) {
+        List<R> list = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            R r = result.get(id);
+            if (r != null) {
+                list.add(r);
+            }
+        }
+        return list;
+    }
+
+
     // 互斥锁 - 加锁
     private boolean tryLock(String lockKey) {
         // 设置锁
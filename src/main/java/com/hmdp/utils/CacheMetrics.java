@@ -0,0 +1,99 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * CacheClient 的监控指标，按缓存前缀（prefix）打标签，通过 /actuator/metrics 查看
+ * hmdp.cache.requests{result}：local_hit 本地缓存命中、hit redis 命中、null_hit 命中空值、miss 未命中、rejected 布隆过滤器拦截
+ * hmdp.cache.db.load：查询数据库的耗时
+ * hmdp.cache.lock.contention：获取重建互斥锁失败的次数
+ * hmdp.cache.stale.served：返回已逻辑过期数据的次数
+ * hmdp.cache.rebuilds{trigger}：read 读请求触发、refresh_ahead 提前刷新、rejected 重建线程池已满、breaker_open 熔断中跳过重建
+ * hmdp.cache.breaker.rejected：熔断拒绝查询数据库的次数（缓存未命中时快速失败）
+ */
+@Component
+public class CacheMetrics {
+
+    public static final String LOCAL_HIT = "local_hit";
+    public static final String HIT = "hit";
+    public static final String NULL_HIT = "null_hit";
+    public static final String MISS = "miss";
+    public static final String REJECTED = "rejected";
+
+    public static final String TRIGGER_READ = "read";
+    public static final String TRIGGER_REFRESH_AHEAD = "refresh_ahead";
+    public static final String TRIGGER_REJECTED = "rejected";
+    public static final String TRIGGER_BREAKER_OPEN = "breaker_open";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 计数器、计时器按 名称 + 标签 缓存，避免每次请求都查找注册表
+     */
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public MeterRegistry getMeterRegistry() {
+        return meterRegistry;
+    }
+
+    public void request(String prefix, String result) {
+        counter("hmdp.cache.requests", prefix, "result", result).increment();
+    }
+
+    public void lockContention(String key) {
+        counter("hmdp.cache.lock.contention", prefixOf(key), null, null).increment();
+    }
+
+    public void staleServed(String key) {
+        counter("hmdp.cache.stale.served", prefixOf(key), null, null).increment();
+    }
+
+    public void rebuild(String key, String trigger) {
+        counter("hmdp.cache.rebuilds", prefixOf(key), "trigger", trigger).increment();
+    }
+
+    public void breakerRejected(String key) {
+        counter("hmdp.cache.breaker.rejected", prefixOf(key), null, null).increment();
+    }
+
+    /**
+     * 包装数据库查询，记录耗时
+     */
+    public <T, R> Function<T, R> timed(String prefix, Function<T, R> dbFallback) {
+        Timer timer = timers.computeIfAbsent(prefix, p -> Timer.builder("hmdp.cache.db.load")
+                .tag("prefix", p)
+                .register(meterRegistry));
+        return t -> timer.record(() -> dbFallback.apply(t));
+    }
+
+    private Counter counter(String name, String prefix, String tag, String value) {
+        String id = name + "|" + prefix + "|" + value;
+        Counter counter = counters.get(id);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(id, k -> {
+                Counter.Builder builder = Counter.builder(name).tag("prefix", prefix);
+                if (tag != null) {
+                    builder.tag(tag, value);
+                }
+                return builder.register(meterRegistry);
+            });
+        }
+        return counter;
+    }
+
+    // cache:shop:1 -> cache:shop:
+    private static String prefixOf(String key) {
+        return key.substring(0, key.lastIndexOf(':') + 1);
+    }
+}
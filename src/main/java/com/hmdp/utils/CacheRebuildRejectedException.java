@@ -0,0 +1,11 @@
+package com.hmdp.utils;
+
+/**
+ * 缓存重建被熔断拒绝：缓存未命中且没有可返回的旧数据时快速失败，避免请求涌向数据库
+ */
+public class CacheRebuildRejectedException extends RuntimeException {
+
+    public CacheRebuildRejectedException(String key) {
+        super("缓存重建被拒绝：" + key);
+    }
+}
@@ -0,0 +1,225 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Supplier;
+
+/**
+ * 热点 key 探测 + 本地固定缓存
+ * 按 sampleRate 采样访问，计入 count-min sketch；滑动窗口由 segments 个 sketch 轮转组成，每 windowSeconds / segments 秒清空最旧的一段
+ * 窗口内估计访问次数达到 threshold 的 key 视为热点，其读取结果固定在本地缓存 pinSeconds 秒，不再访问 redis
+ * 热点 key 在一个窗口内没有再次达到阈值后自动摘除
+ */
+@Slf4j
+@Component
+public class HotKeyDetector {
+
+    private static final int DEPTH = 4;
+
+    /**
+     * 本地固定缓存中的空值标记
+     */
+    private static final Object NULL_VALUE = new Object();
+
+    @Value("${hmdp.hot-key.sample-rate:0.1}")
+    private double sampleRate;
+
+    @Value("${hmdp.hot-key.window-seconds:10}")
+    private int windowSeconds;
+
+    @Value("${hmdp.hot-key.segments:5}")
+    private int segments;
+
+    /**
+     * 窗口内的访问次数阈值（按采样率换算后的估计值）
+     */
+    @Value("${hmdp.hot-key.threshold:1000}")
+    private long threshold;
+
+    /**
+     * sketch 每行的计数器个数
+     */
+    @Value("${hmdp.hot-key.width:4096}")
+    private int width;
+
+    @Value("${hmdp.hot-key.pin-seconds:3}")
+    private long pinSeconds;
+
+    @Value("${hmdp.hot-key.max-pinned:1000}")
+    private long maxPinned;
+
+    private AtomicIntegerArray[] sketches;
+
+    private volatile int current;
+
+    /**
+     * 当前的热点 key -> 最近一次达到阈值的时间
+     */
+    private final Map<String, Long> hotKeys = new ConcurrentHashMap<>();
+
+    private Cache<String, Object> pinned;
+
+    private final ScheduledExecutorService rotateExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "hot-key-rotate");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    private void init() {
+        sketches = new AtomicIntegerArray[segments];
+        for (int i = 0; i < segments; i++) {
+            sketches[i] = new AtomicIntegerArray(DEPTH * width);
+        }
+        pinned = Caffeine.newBuilder()
+                .maximumSize(maxPinned)
+                .expireAfterWrite(pinSeconds, TimeUnit.SECONDS)
+                .build();
+        long period = TimeUnit.SECONDS.toMillis(windowSeconds) / segments;
+        rotateExecutor.scheduleAtFixedRate(this::rotate, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        rotateExecutor.shutdownNow();
+    }
+
+    /**
+     * 记录一次访问，返回该 key 当前是否为热点
+     */
+    public boolean record(String key) {
+        if (ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            long estimate = add(key);
+            if (estimate / sampleRate >= threshold && hotKeys.put(key, System.currentTimeMillis()) == null) {
+                log.info("发现热点 key：{}", key);
+            }
+        }
+        return hotKeys.containsKey(key);
+    }
+
+    /**
+     * 读取 key：记录访问，热点 key 的结果固定在本地缓存
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Supplier<T> loader) {
+        if (!record(key)) {
+            return loader.get();
+        }
+        Object value = pinned.get(key, k -> {
+            T t = loader.get();
+            return t == null ? NULL_VALUE : t;
+        });
+        return value == NULL_VALUE ? null : (T) value;
+    }
+
+    /**
+     * 本地固定缓存中的值，未固定返回 null
+     */
+    public Object getPinned(String key) {
+        return pinned.getIfPresent(key);
+    }
+
+    /**
+     * 如果 key 是热点，固定到本地缓存
+     */
+    public void pinIfHot(String key, Object value) {
+        if (hotKeys.containsKey(key)) {
+            pinned.put(key, value);
+        }
+    }
+
+    /**
+     * key 被修改，移除本地固定的值
+     */
+    public void invalidate(String key) {
+        pinned.invalidate(key);
+    }
+
+    /**
+     * 当前热点 key，按窗口内估计访问次数从高到低
+     */
+    public List<Map<String, Object>> hotKeys() {
+        List<Map<String, Object>> list = new ArrayList<>(hotKeys.size());
+        for (String key : hotKeys.keySet()) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("key", key);
+            item.put("estimate", (long) (estimate(key) / sampleRate));
+            item.put("pinned", pinned.getIfPresent(key) != null);
+            list.add(item);
+        }
+        list.sort((a, b) -> Long.compare((long) b.get("estimate"), (long) a.get("estimate")));
+        return list;
+    }
+
+    // 计入当前段，返回窗口内的估计次数
+    private long add(String key) {
+        AtomicIntegerArray sketch = sketches[current];
+        for (int row = 0; row < DEPTH; row++) {
+            sketch.incrementAndGet(index(key, row));
+        }
+        return estimate(key);
+    }
+
+    // 窗口内的估计次数：每行取各段之和，再取各行的最小值
+    private long estimate(String key) {
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = index(key, row);
+            long sum = 0;
+            for (AtomicIntegerArray s : sketches) {
+                sum += s.get(index);
+            }
+            min = Math.min(min, sum);
+        }
+        return min;
+    }
+
+    // 窗口滑动：清空最旧的一段作为新的当前段，摘除一个窗口内未再次达到阈值的热点 key
+    private void rotate() {
+        int next = (current + 1) % segments;
+        AtomicIntegerArray sketch = sketches[next];
+        for (int i = 0; i < sketch.length(); i++) {
+            sketch.set(i, 0);
+        }
+        current = next;
+        long expireBefore = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(windowSeconds);
+        hotKeys.entrySet().removeIf(e -> {
+            if (e.getValue() < expireBefore) {
+                log.info("热点 key 已冷却：{}", e.getKey());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    // 双重哈希：第 row 行的位置为 h1 + row * h2
+    private int index(String key, int row) {
+        int h1 = spread(key.hashCode());
+        int h2 = spread(h1 ^ 0x9E3779B9) | 1;
+        return row * width + Math.floorMod(h1 + row * h2, width);
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+}
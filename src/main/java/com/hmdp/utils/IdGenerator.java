@@ -0,0 +1,12 @@
+package com.hmdp.utils;
+
+public interface IdGenerator {
+
+    /**
+     * 生成全局唯一id
+     * @param keyPrefix 业务前缀，例如 order
+     * @return 全局唯一id
+     */
+    Long nextId(String keyPrefix);
+
+}
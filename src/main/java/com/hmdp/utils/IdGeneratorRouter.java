@@ -0,0 +1,22 @@
+package com.hmdp.utils;
+
+import java.util.Map;
+
+/**
+ * 按业务前缀选择id生成器，未配置的前缀使用默认生成器
+ */
+public class IdGeneratorRouter implements IdGenerator {
+
+    private final IdGenerator defaultGenerator;
+    private final Map<String, IdGenerator> generators;
+
+    public IdGeneratorRouter(IdGenerator defaultGenerator, Map<String, IdGenerator> generators) {
+        this.defaultGenerator = defaultGenerator;
+        this.generators = generators;
+    }
+
+    @Override
+    public Long nextId(String keyPrefix) {
+        return generators.getOrDefault(keyPrefix, defaultGenerator).nextId(keyPrefix);
+    }
+}
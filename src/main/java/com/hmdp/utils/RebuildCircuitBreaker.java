@@ -0,0 +1,82 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 缓存重建熔断：限制本节点同时查询数据库的重建数
+ * 没有空闲许可（并发重建过多）或数据库查询失败都计为一次失败，连续失败 failureThreshold 次后熔断 openMillis 毫秒，
+ * 熔断期间拒绝所有重建；熔断结束后第一次失败立即再次熔断，成功一次才恢复计数
+ */
+@Slf4j
+public class RebuildCircuitBreaker {
+
+    private final int maxConcurrentLoads;
+
+    private final Semaphore permits;
+
+    private final int failureThreshold;
+
+    private final long openMillis;
+
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private volatile long openUntil;
+
+    /**
+     * @param maxConcurrentLoads 最多同时查询数据库的重建数
+     * @param failureThreshold 连续失败多少次后熔断
+     * @param openMillis 熔断时长
+     */
+    public RebuildCircuitBreaker(int maxConcurrentLoads, int failureThreshold, long openMillis) {
+        this.maxConcurrentLoads = maxConcurrentLoads;
+        this.permits = new Semaphore(maxConcurrentLoads);
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * 是否处于熔断状态
+     */
+    public boolean isOpen() {
+        return System.currentTimeMillis() < openUntil;
+    }
+
+    /**
+     * 获取重建许可，熔断中或没有空闲许可时返回 false，获取成功后必须调用 release
+     */
+    public boolean tryAcquire() {
+        if (isOpen()) {
+            return false;
+        }
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        onFailure();
+        return false;
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public void onSuccess() {
+        failures.set(0);
+    }
+
+    public void onFailure() {
+        if (failures.incrementAndGet() >= failureThreshold && !isOpen()) {
+            openUntil = System.currentTimeMillis() + openMillis;
+            log.warn("缓存重建熔断 {} 毫秒：连续失败 {} 次", openMillis, failures.get());
+        }
+    }
+
+    /**
+     * 当前正在执行的重建数
+     */
+    public int inUse() {
+        return maxConcurrentLoads - permits.availablePermits();
+    }
+}
@@ -0,0 +1,182 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 布隆过滤器：redis bitmap 为各节点共享的数据，本地 bit 数组为镜像
+ * 本地判断存在直接放行；本地判断不存在时再查 redis（其他节点新增的 id 只写了 redis），redis 也不存在才拒绝
+ * 布隆过滤器不支持删除，已删除的 id 仍由缓存空值兜底
+ */
+public class RedisBloomFilter {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * redis bitmap 的 key，包含位数和哈希函数个数，参数变化后使用新的 bitmap
+     */
+    private final String key;
+
+    private final byte[] rawKey;
+
+    /**
+     * bit 数组长度
+     */
+    private final long numBits;
+
+    /**
+     * 哈希函数个数
+     */
+    private final int numHashes;
+
+    /**
+     * 本地镜像
+     */
+    private final AtomicLongArray localBits;
+
+    /**
+     * 启动加载完成之前，所有 id 都判定为可能存在
+     */
+    private volatile boolean ready;
+
+    /**
+     * @param keyPrefix 例如 bloom:shop:
+     * @param expectedInsertions 预计元素个数
+     * @param fpp 期望误判率
+     */
+    public RedisBloomFilter(StringRedisTemplate stringRedisTemplate, String keyPrefix, long expectedInsertions, double fpp) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        // m = -n * ln(p) / (ln2)^2，k = m / n * ln2
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.numBits = (bits + 63) / 64 * 64;
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+        this.key = keyPrefix + numBits + ":" + numHashes;
+        this.rawKey = key.getBytes(StandardCharsets.UTF_8);
+        this.localBits = new AtomicLongArray((int) (numBits / 64));
+    }
+
+    /**
+     * 添加元素：写本地镜像和 redis
+     */
+    public void add(Object id) {
+        long[] offsets = offsets(id);
+        setLocal(offsets);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            setBits(connection, offsets);
+            return null;
+        });
+    }
+
+    /**
+     * 批量添加元素，一次管道写入 redis
+     */
+    public void addAll(Collection<?> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Object id : ids) {
+                long[] offsets = offsets(id);
+                setLocal(offsets);
+                setBits(connection, offsets);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 判断元素是否可能存在，false 表示一定不存在
+     */
+    public boolean mightContain(Object id) {
+        if (!ready) {
+            return true;
+        }
+        // 1、本地镜像全部命中，可能存在
+        long[] offsets = offsets(id);
+        if (testLocal(offsets)) {
+            return true;
+        }
+        // 2、本地不存在，查询 redis（一次管道读取所有 bit）
+        List<Object> bits = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (long offset : offsets) {
+                connection.getBit(rawKey, offset);
+            }
+            return null;
+        });
+        for (Object bit : bits) {
+            if (!Boolean.TRUE.equals(bit)) {
+                return false;
+            }
+        }
+        // 3、redis 存在（其他节点新增），同步到本地镜像
+        setLocal(offsets);
+        return true;
+    }
+
+    /**
+     * 将 redis bitmap 合并到本地镜像，并开始拦截
+     */
+    public void loadFromRedis() {
+        byte[] bytes = stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey));
+        if (bytes != null) {
+            // redis bitmap 的 offset 0 是第一个字节的最高位
+            for (int i = 0; i < bytes.length; i++) {
+                int b = bytes[i] & 0xFF;
+                for (int j = 0; b != 0 && j < 8; j++) {
+                    if ((b & (0x80 >>> j)) != 0) {
+                        setLocal((long) i * 8 + j);
+                    }
+                }
+            }
+        }
+        ready = true;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    // MurmurHash 128 位结果的两个 64 位作为 h1、h2，第 i 个哈希为 h1 + i * h2
+    private long[] offsets(Object id) {
+        long[] hash = MurmurHash.hash128(String.valueOf(id).getBytes(StandardCharsets.UTF_8));
+        long[] offsets = new long[numHashes];
+        long combined = hash[0];
+        for (int i = 0; i < numHashes; i++) {
+            offsets[i] = (combined & Long.MAX_VALUE) % numBits;
+            combined += hash[1];
+        }
+        return offsets;
+    }
+
+    private void setBits(RedisConnection connection, long[] offsets) {
+        for (long offset : offsets) {
+            connection.setBit(rawKey, offset, true);
+        }
+    }
+
+    private void setLocal(long... offsets) {
+        for (long offset : offsets) {
+            long mask = 1L << offset;
+            int index = (int) (offset >>> 6);
+            if ((localBits.get(index) & mask) == 0) {
+                localBits.accumulateAndGet(index, mask, (a, b) -> a | b);
+            }
+        }
+    }
+
+    private boolean testLocal(long[] offsets) {
+        for (long offset : offsets) {
+            if ((localBits.get((int) (offset >>> 6)) & (1L << offset)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
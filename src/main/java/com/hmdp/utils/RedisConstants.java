@@ -10,15 +10,41 @@ public class RedisConstants {
 
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+
+    public static final String BLOOM_SHOP_KEY = "bloom:shop:";
+    public static final String BLOOM_BLOG_KEY = "bloom:blog:";
+    public static final String BLOOM_USER_KEY = "bloom:user:";
 
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_VOUCHER_KEY = "seckill:voucher:";
+    public static final String SECKILL_SHARDS_KEY = "seckill:shards:";
+    public static final String SECKILL_ORDER_STREAM = "stream.orders";
+    public static final String SECKILL_ORDER_STREAMS_KEY = "seckill:order-streams";
+    public static final String SECKILL_ORDER_DEAD_STREAM = "stream.orders.dead";
+    public static final String SECKILL_ORDER_GROUP = "g1";
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:sold-out";
+    public static final String SECKILL_STOCK_RESET_CHANNEL = "seckill:stock-reset";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
+    public static final String BLOG_HOT_KEY = "blog:hot";
+    public static final String LOCK_BLOG_HOT_REBUILD_KEY = "lock:blog:hot-rebuild";
+    public static final String BLOG_LIKE_DELTA_KEY = "blog:like:delta";
+    public static final String BLOG_LIKE_FLUSHING_KEY = "blog:like:flushing";
+    public static final String LOCK_BLOG_LIKE_FLUSH_KEY = "lock:blog:like-flush";
     public static final String FEED_KEY = "feed:";
+    public static final String FEED_OUTBOX_KEY = "feed:outbox:";
+    public static final String FEED_BIG_AUTHORS_KEY = "feed:big-authors";
+    public static final String FEED_FOLLOWER_COUNT_KEY = "feed:follower-count:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
     public static final String USER_SIGN_KEY = "sign:";
 
     public static final String FOLLOW_KEY = "follow:";
+
+    public static final String ID_WORKER_KEY = "id:worker:";
+    public static final String ID_WORKER_SEQ_KEY = "id:worker:seq";
+    public static final Long ID_WORKER_TTL = 10L;
 }
@@ -1,19 +1,28 @@
 package com.hmdp.utils;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
+@Slf4j
 @Component
-public class RedisWorker {
+public class RedisWorker implements IdGenerator {
 
     /**
      * 开始时间戳
-     * 2025年6月11日 凌晨0点0分0秒 对应的时间戳 1746921600
+     * 2025年5月11日 0点0分0秒（UTC）对应的时间戳 1746921600
      */
     private static final long BEGIN_TIMESTAMP = 1746921600;
 
@@ -22,29 +31,166 @@ public class RedisWorker {
      */
     private static final int COUNT_BITS = 32;
 
+    /**
+     * 时间戳位数，30 位秒约 34 年；第 62 位留给 SnowflakeIdGenerator 的生成器标记，两种生成器的 id 不会重叠
+     */
+    private static final int TIMESTAMP_BITS = 30;
+
+    /**
+     * 能生成的最大 id，小于 SnowflakeIdGenerator.GENERATOR_FLAG
+     */
+    public static final long MAX_ID = (1L << (TIMESTAMP_BITS + COUNT_BITS)) - 1;
+
+    private static final long SECONDS_PER_DAY = 86400;
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
+
+    private static final ExecutorService SEGMENT_PREFETCH_EXECUTOR = Executors.newSingleThreadExecutor();
+
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
 
+    /**
+     * 号段长度：每次 INCRBY 预占的序列号个数，小于等于 1 时关闭号段模式，每个 id 一次 INCR
+     */
+    @Value("${hmdp.id.segment-step:0}")
+    private long segmentStep;
+
+    /**
+     * 当前号段剩余序列号低于 号段长度 * 该比例 时，异步预取下一个号段
+     */
+    @Value("${hmdp.id.segment-prefetch-ratio:0.2}")
+    private double segmentPrefetchRatio;
+
+    /**
+     * 每个业务前缀的号段
+     */
+    private final Map<String, Segment> segments = new ConcurrentHashMap<>();
+
+    /**
+     * 缓存当天的日期字符串，避免每个 id 都格式化一次日期
+     */
+    private volatile DayCache dayCache = new DayCache(-1, null);
+
     /**
      * redis 实现唯一id
      * @param keyPrefix
      * @return
      */
+    @Override
     public Long nextId(String keyPrefix){
         // 1、生成时间戳
-        LocalDateTime nowDateTime = LocalDateTime.now();        // 2025年6月11日 23:47:00
-        long nowSecond = nowDateTime.toEpochSecond(ZoneOffset.UTC);
+        long nowSecond = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC);
         long timestamp = nowSecond - BEGIN_TIMESTAMP;
+        if (timestamp >= 1L << TIMESTAMP_BITS) {
+            throw new IllegalStateException("id 时间戳超出范围：" + timestamp);
+        }
 
         // 2、生成序列号
         // 2.1、获取当前日期，精确到天
         // yyyy:MM:dd 是为了 存入 redis 方便分组
-        String date = nowDateTime.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));    // 2025:6:11
+        String date = currentDate(nowSecond);    // 2025:06:11
         // 2.2、自增长
-        Long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);      // increment() 返回值从 0 开始计算
+        long count = segmentStep > 1
+                ? nextCountFromSegment(keyPrefix, date)
+                : stringRedisTemplate.opsForValue().increment(countKey(keyPrefix, date));      // increment() 返回值从 1 开始计算
 
         // 3、拼接 id，并返回
         return timestamp << COUNT_BITS | count;
     }
 
+    private static String countKey(String keyPrefix, String date) {
+        return "icr:" + keyPrefix + ":" + date;
+    }
+
+    private String currentDate(long nowSecond) {
+        long day = nowSecond / SECONDS_PER_DAY;
+        DayCache cache = dayCache;
+        if (cache.day != day) {
+            cache = new DayCache(day, LocalDateTime.ofEpochSecond(nowSecond, 0, ZoneOffset.UTC).format(DATE_FORMATTER));
+            dayCache = cache;
+        }
+        return cache.date;
+    }
+
+    /**
+     * 号段模式：从本地号段中取序列号，号段用完时切换到预取的号段
+     * 号段由 INCRBY 原子预占，多个节点的号段互不重叠，id 布局与逐个 INCR 相同
+     */
+    private long nextCountFromSegment(String keyPrefix, String date) {
+        Segment segment = segments.computeIfAbsent(keyPrefix, k -> new Segment());
+        while (true) {
+            Range range = segment.current;
+            if (range != null && range.date.equals(date)) {
+                long count = range.cursor.getAndIncrement();
+                if (count <= range.max) {
+                    // 到达低水位，只有恰好取到该序列号的线程触发一次预取
+                    if (range.max - count == (long) (segmentStep * segmentPrefetchRatio)) {
+                        prefetch(segment, keyPrefix, date);
+                    }
+                    return count;
+                }
+            }
+            // 号段用完或日期变化，切换号段
+            synchronized (segment) {
+                if (segment.current == range) {
+                    segment.current = takeNextRange(segment, keyPrefix, date);
+                }
+            }
+        }
+    }
+
+    private void prefetch(Segment segment, String keyPrefix, String date) {
+        segment.next = CompletableFuture.supplyAsync(() -> allocate(keyPrefix, date), SEGMENT_PREFETCH_EXECUTOR);
+    }
+
+    private Range takeNextRange(Segment segment, String keyPrefix, String date) {
+        CompletableFuture<Range> next = segment.next;
+        segment.next = null;
+        if (next != null) {
+            try {
+                Range range = next.join();
+                if (range.date.equals(date)) {
+                    return range;
+                }
+            } catch (Exception e) {
+                log.warn("预取号段失败，同步获取号段：{}", keyPrefix, e);
+            }
+        }
+        return allocate(keyPrefix, date);
+    }
+
+    // INCRBY icr:keyPrefix:date step，预占 [max - step + 1, max]
+    private Range allocate(String keyPrefix, String date) {
+        Long max = stringRedisTemplate.opsForValue().increment(countKey(keyPrefix, date), segmentStep);
+        return new Range(date, max - segmentStep + 1, max);
+    }
+
+    private static class Segment {
+        private volatile Range current;
+        private volatile CompletableFuture<Range> next;
+    }
+
+    private static class Range {
+        private final String date;
+        private final AtomicLong cursor;
+        private final long max;
+
+        private Range(String date, long min, long max) {
+            this.date = date;
+            this.cursor = new AtomicLong(min);
+            this.max = max;
+        }
+    }
+
+    private static class DayCache {
+        private final long day;
+        private final String date;
+
+        private DayCache(long day, String date) {
+            this.day = day;
+            this.date = date;
+        }
+    }
+
 }
@@ -0,0 +1,193 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 逻辑过期缓存的提前刷新
+ * 记录每个 key 的访问频率（每秒衰减），热点 key 在逻辑过期前 aheadMillis 内由后台线程重建；
+ * 频率衰减到接近 0 的冷 key 不再跟踪，过期后仍由读请求触发重建
+ * 重建线程池有界：并发数、队列长度固定，队列满时本轮跳过，下一轮再提交
+ */
+@Slf4j
+public class RefreshAheadScheduler {
+
+    /**
+     * 每秒的访问频率衰减系数，稳定在 n 次/秒 时频率约为 n / (1 - DECAY)
+     */
+    private static final double DECAY = 0.8;
+
+    /**
+     * 频率低于该值的 key 不再跟踪
+     */
+    private static final double COLD_FREQUENCY = 0.05;
+
+    private final long aheadMillis;
+
+    private final double hotFrequency;
+
+    private final int maximumKeys;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cache-refresh-ahead");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 重建线程池，提前刷新和读请求触发的重建共用
+     */
+    private final ThreadPoolExecutor rebuildExecutor;
+
+    /**
+     * @param aheadMillis 逻辑过期前多久开始刷新
+     * @param hotFrequency 访问频率达到该值视为热点 key
+     * @param maximumKeys 最多跟踪的 key 数量
+     * @param maxConcurrency 最大并发重建数
+     * @param queueCapacity 等待重建的任务数上限
+     */
+    public RefreshAheadScheduler(long aheadMillis, double hotFrequency, int maximumKeys, int maxConcurrency, int queueCapacity) {
+        this.aheadMillis = aheadMillis;
+        this.hotFrequency = hotFrequency;
+        this.maximumKeys = maximumKeys;
+        this.rebuildExecutor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread thread = new Thread(r, "cache-rebuild");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.rebuildExecutor.allowCoreThreadTimeOut(true);
+        scheduler.scheduleWithFixedDelay(this::tick, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 记录一次访问
+     * @param expireAt 当前读到的逻辑过期时间
+     * @param refresher 重建缓存并返回新的逻辑过期时间，返回 -1 表示本次未重建
+     */
+    public void record(String key, long expireAt, Refresher refresher) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            if (entries.size() >= maximumKeys) {
+                return;
+            }
+            entry = entries.computeIfAbsent(key, k -> new Entry(refresher));
+        }
+        entry.hits.increment();
+        if (expireAt > entry.expireAt) {
+            entry.expireAt = expireAt;
+        }
+    }
+
+    /**
+     * 提交重建任务，线程池已满时返回 false
+     */
+    public boolean submit(Runnable task) {
+        try {
+            rebuildExecutor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 等待重建的任务数
+     */
+    public int queueSize() {
+        return rebuildExecutor.getQueue().size();
+    }
+
+    /**
+     * 正在重建的任务数
+     */
+    public int activeCount() {
+        return rebuildExecutor.getActiveCount();
+    }
+
+    /**
+     * 正在跟踪访问频率的 key 数量
+     */
+    public int trackedKeys() {
+        return entries.size();
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+        rebuildExecutor.shutdownNow();
+    }
+
+    /**
+     * 每轮衰减所有 key 的访问频率，并为即将逻辑过期的热点 key 提交重建
+     * 线程池已满时只停止提交，不能提前结束本轮：否则剩余 key 的访问频率不衰减、计数不清零，冷 key 也不会被移除
+     */
+    private void tick() {
+        long now = System.currentTimeMillis();
+        boolean saturated = false;
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> e = iterator.next();
+            Entry entry = e.getValue();
+            // 1、更新访问频率，冷 key 不再跟踪
+            entry.frequency = entry.frequency * DECAY + entry.hits.sumThenReset();
+            if (entry.frequency < COLD_FREQUENCY) {
+                iterator.remove();
+                continue;
+            }
+            // 2、热点 key 即将逻辑过期，提交重建
+            if (saturated || entry.frequency < hotFrequency || entry.expireAt - now > aheadMillis
+                    || !entry.refreshing.compareAndSet(false, true)) {
+                continue;
+            }
+            if (!submit(() -> refresh(e.getKey(), entry))) {
+                // 3、线程池已满，本轮不再提交（其余 key 的访问频率照常衰减）
+                entry.refreshing.set(false);
+                saturated = true;
+                log.warn("缓存重建线程池已满，跳过本轮提前刷新");
+            }
+        }
+    }
+
+    private void refresh(String key, Entry entry) {
+        try {
+            long expireAt = entry.refresher.refresh();
+            if (expireAt > entry.expireAt) {
+                entry.expireAt = expireAt;
+            }
+        } catch (Exception e) {
+            log.error("提前刷新缓存失败：{}", key, e);
+        } finally {
+            entry.refreshing.set(false);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Refresher {
+        long refresh();
+    }
+
+    private static class Entry {
+        private final Refresher refresher;
+        private final LongAdder hits = new LongAdder();
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile long expireAt;
+        private double frequency;
+
+        private Entry(Refresher refresher) {
+            this.refresher = refresher;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.hmdp.utils;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAM;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_VOUCHER_KEY;
+
+/**
+ * 秒杀相关的 redis key
+ * 分段库存模式下每个分段使用 hash tag {voucherId:shard}，同一分段的库存、订单、秒杀信息落在同一个 slot，
+ * 不同分段分散到不同的 slot（集群节点）；分段的订单也写入同一个 hash tag 下的 stream，由订单消费线程逐个读取
+ */
+public class SeckillKeys {
+
+    /**
+     * key 后缀
+     * @param voucherId 优惠券id
+     * @param shards 分段数，小于等于 1 表示不分段
+     * @param shard 分段下标
+     * @return 不分段：voucherId；分段：{voucherId:shard}
+     */
+    public static String suffix(Long voucherId, int shards, int shard) {
+        return shards <= 1 ? voucherId.toString() : "{" + voucherId + ":" + shard + "}";
+    }
+
+    /**
+     * 订单 stream
+     * @return 不分段：stream.orders；分段：stream.orders:{voucherId:shard}
+     */
+    public static String orderStream(Long voucherId, int shards, int shard) {
+        return shards <= 1 ? SECKILL_ORDER_STREAM : SECKILL_ORDER_STREAM + ":" + suffix(voucherId, shards, shard);
+    }
+
+    /**
+     * seckill.lua 的 KEYS：库存 key、订单 key、秒杀信息 key、订单 stream
+     */
+    public static List<String> scriptKeys(Long voucherId, int shards, int shard) {
+        String suffix = suffix(voucherId, shards, shard);
+        return Arrays.asList(SECKILL_STOCK_KEY + suffix, SECKILL_ORDER_KEY + suffix, SECKILL_VOUCHER_KEY + suffix,
+                orderStream(voucherId, shards, shard));
+    }
+}
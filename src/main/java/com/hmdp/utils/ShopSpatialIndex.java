@@ -0,0 +1,389 @@
+package com.hmdp.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 商铺坐标的本地空间索引：redis GEO 不可用时的兜底，或按配置直接使用
+ * 每个商铺类型一个网格，按经纬度划分为 cellDegrees 大小的格子；每个格子的坐标连续存放在基本类型数组中
+ * 查询从所在格子一圈圈向外扩展，直到未扫描的格子不可能更近（或超出半径）
+ * 每个商铺预先计算单位球面上的三维坐标，比较距离时只算弦长的平方（与球面距离单调），不需要三角函数
+ * 距离与 redis GEO 相同，按球面距离计算，单位米
+ */
+@Component
+public class ShopSpatialIndex {
+
+    /**
+     * 与 redis GEO 相同的地球半径（米）
+     */
+    private static final double EARTH_RADIUS = 6372797.560856;
+
+    /**
+     * 纬度 1 度对应的距离（米）
+     */
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * EARTH_RADIUS;
+
+    /**
+     * 格子边长（度），0.01 度约 1 公里
+     */
+    @Value("${hmdp.shop.spatial-index.cell-degrees:0.01}")
+    private double cellDegrees = 0.01;
+
+    private final Map<Long, Grid> grids = new ConcurrentHashMap<>();
+
+    private volatile boolean ready;
+
+    /**
+     * 新增或移动商铺，类型变化时从原类型的网格中移除
+     */
+    public void put(long id, long typeId, double x, double y) {
+        for (Map.Entry<Long, Grid> e : grids.entrySet()) {
+            if (e.getKey() != typeId) {
+                e.getValue().remove(id);
+            }
+        }
+        grids.computeIfAbsent(typeId, k -> new Grid(cellDegrees)).put(id, x, y);
+    }
+
+    public void remove(long id) {
+        grids.values().forEach(grid -> grid.remove(id));
+    }
+
+    /**
+     * 半径内的商铺，按距离由近到远，最多 limit 个
+     */
+    public List<Neighbor> radius(long typeId, double x, double y, double meters, int limit) {
+        Grid grid = grids.get(typeId);
+        return grid == null ? Collections.emptyList() : grid.search(x, y, limit, meters);
+    }
+
+    /**
+     * 最近的 k 个商铺，按距离由近到远
+     */
+    public List<Neighbor> nearest(long typeId, double x, double y, int k) {
+        Grid grid = grids.get(typeId);
+        return grid == null ? Collections.emptyList() : grid.search(x, y, k, Double.MAX_VALUE);
+    }
+
+    /**
+     * 启动加载完成后才可用于查询
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void setReady(boolean ready) {
+        this.ready = ready;
+    }
+
+    public int size() {
+        return grids.values().stream().mapToInt(Grid::size).sum();
+    }
+
+    /**
+     * 两点间的球面距离（米）
+     */
+    public static double distance(double x1, double y1, double x2, double y2) {
+        double lat1 = Math.toRadians(y1);
+        double lat2 = Math.toRadians(y2);
+        double sinLat = Math.sin((lat2 - lat1) / 2);
+        double sinLon = Math.sin(Math.toRadians(x2 - x1) / 2);
+        double a = sinLat * sinLat + Math.cos(lat1) * Math.cos(lat2) * sinLon * sinLon;
+        return 2 * EARTH_RADIUS * Math.asin(Math.sqrt(a));
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Neighbor {
+        private long id;
+        private double distance;
+    }
+
+    /**
+     * 单个类型的网格，读写锁保护：查询共享，增删互斥
+     */
+    private static class Grid {
+
+        private final double cellDegrees;
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        // 商铺 id -> 所在格子
+        private final Map<Long, Long> cellOf = new HashMap<>();
+
+        // 格子 -> 格子中的商铺
+        private final Map<Long, Cell> cells = new HashMap<>();
+
+        // 有商铺的格子范围，查询扩展到覆盖该范围后停止
+        private int minCx = Integer.MAX_VALUE, maxCx = Integer.MIN_VALUE;
+        private int minCy = Integer.MAX_VALUE, maxCy = Integer.MIN_VALUE;
+
+        private Grid(double cellDegrees) {
+            this.cellDegrees = cellDegrees;
+        }
+
+        private int size() {
+            lock.readLock().lock();
+            try {
+                return cellOf.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void put(long id, double x, double y) {
+            lock.writeLock().lock();
+            try {
+                removeLocked(id);
+                int cx = cellX(x);
+                int cy = cellY(y);
+                long key = cellKey(cx, cy);
+                double lat = Math.toRadians(y);
+                double lon = Math.toRadians(x);
+                cells.computeIfAbsent(key, k -> new Cell())
+                        .add(id, Math.cos(lat) * Math.cos(lon), Math.cos(lat) * Math.sin(lon), Math.sin(lat));
+                cellOf.put(id, key);
+                minCx = Math.min(minCx, cx);
+                maxCx = Math.max(maxCx, cx);
+                minCy = Math.min(minCy, cy);
+                maxCy = Math.max(maxCy, cy);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void remove(long id) {
+            lock.writeLock().lock();
+            try {
+                removeLocked(id);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void removeLocked(long id) {
+            Long key = cellOf.remove(id);
+            if (key == null) {
+                return;
+            }
+            Cell cell = cells.get(key);
+            cell.remove(id);
+            if (cell.size == 0) {
+                cells.remove(key);
+            }
+        }
+
+        // 距离 maxMeters 以内最近的 k 个商铺
+        private List<Neighbor> search(double x, double y, int k, double maxMeters) {
+            if (k <= 0) {
+                return Collections.emptyList();
+            }
+            double lat = Math.toRadians(y);
+            double lon = Math.toRadians(x);
+            double qx = Math.cos(lat) * Math.cos(lon);
+            double qy = Math.cos(lat) * Math.sin(lon);
+            double qz = Math.sin(lat);
+            // 半径对应的弦长平方
+            double maxChord = maxMeters >= Math.PI * EARTH_RADIUS ? 4 : chordSquared(maxMeters);
+            Heap heap;
+            lock.readLock().lock();
+            try {
+                if (cellOf.isEmpty()) {
+                    return Collections.emptyList();
+                }
+                // 结果数不会超过商铺数，k 很大时不按 k 分配堆
+                k = Math.min(k, cellOf.size());
+                heap = new Heap(k);
+                int ccx = cellX(x);
+                int ccy = cellY(y);
+                int maxRing = Math.max(Math.max(ccx - minCx, maxCx - ccx), Math.max(ccy - minCy, maxCy - ccy));
+                for (int ring = 0; ring <= maxRing; ring++) {
+                    // 1、扫描第 ring 圈的格子：左右两列全部，中间的列只有上下两个
+                    for (int cx = ccx - ring; cx <= ccx + ring; cx++) {
+                        int step = cx == ccx - ring || cx == ccx + ring ? 1 : 2 * ring;
+                        for (int cy = ccy - ring; cy <= ccy + ring; cy += step) {
+                            Cell cell = cells.get(cellKey(cx, cy));
+                            if (cell != null) {
+                                cell.scan(qx, qy, qz, maxChord, heap);
+                            }
+                        }
+                    }
+                    // 2、未扫描的格子距离至少为到已扫描区域边界的距离：超出半径，或已有 k 个且不可能更近，结束
+                    double boundary = chordSquared(boundary(x, y, ccx, ccy, ring));
+                    if (boundary > maxChord || heap.size == k && heap.top() <= boundary) {
+                        break;
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            // 3、按距离由近到远返回
+            return heap.toSortedList();
+        }
+
+        // 查询点到已扫描区域（中心格子外 ring 圈）边界的最短距离（米），经度方向按区域内最高纬度缩放，偏小以保证正确
+        private double boundary(double x, double y, int ccx, int ccy, int ring) {
+            double west = x - (ccx - ring) * cellDegrees;
+            double east = (ccx + ring + 1) * cellDegrees - x;
+            double south = y - (ccy - ring) * cellDegrees;
+            double north = (ccy + ring + 1) * cellDegrees - y;
+            double maxLat = Math.min(90, Math.max(Math.abs((ccy - ring) * cellDegrees), Math.abs((ccy + ring + 1) * cellDegrees)));
+            double lonScale = Math.cos(Math.toRadians(maxLat));
+            return Math.min(Math.min(south, north), Math.min(west, east) * lonScale) * METERS_PER_DEGREE;
+        }
+
+        private int cellX(double x) {
+            return (int) Math.floor(x / cellDegrees);
+        }
+
+        private int cellY(double y) {
+            return (int) Math.floor(y / cellDegrees);
+        }
+
+        private static long cellKey(int cx, int cy) {
+            return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+        }
+    }
+
+    // 球面距离 -> 单位球面上的弦长平方
+    private static double chordSquared(double meters) {
+        double chord = 2 * Math.sin(Math.min(meters / EARTH_RADIUS, Math.PI) / 2);
+        return chord * chord;
+    }
+
+    // 单位球面上的弦长平方 -> 球面距离
+    private static double meters(double chordSquared) {
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(chordSquared) / 2));
+    }
+
+    /**
+     * 格子中的商铺：id 和单位球面坐标连续存放，扫描时顺序读取；删除时用最后一个填补空位
+     */
+    private static class Cell {
+
+        private long[] ids = new long[4];
+        private double[] ux = new double[4];
+        private double[] uy = new double[4];
+        private double[] uz = new double[4];
+        private int size;
+
+        private void add(long id, double x, double y, double z) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                ux = Arrays.copyOf(ux, capacity);
+                uy = Arrays.copyOf(uy, capacity);
+                uz = Arrays.copyOf(uz, capacity);
+            }
+            ids[size] = id;
+            ux[size] = x;
+            uy[size] = y;
+            uz[size] = z;
+            size++;
+        }
+
+        private void remove(long id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    int last = --size;
+                    ids[i] = ids[last];
+                    ux[i] = ux[last];
+                    uy[i] = uy[last];
+                    uz[i] = uz[last];
+                    return;
+                }
+            }
+        }
+
+        private void scan(double qx, double qy, double qz, double maxChord, Heap heap) {
+            for (int i = 0; i < size; i++) {
+                double dx = ux[i] - qx;
+                double dy = uy[i] - qy;
+                double dz = uz[i] - qz;
+                double chord = dx * dx + dy * dy + dz * dz;
+                if (chord <= maxChord) {
+                    heap.offer(chord, ids[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 容量为 k 的最大堆（按弦长平方），堆顶为当前第 k 近
+     */
+    private static class Heap {
+
+        private final double[] keys;
+
+        private final long[] ids;
+
+        private int size;
+
+        private Heap(int k) {
+            keys = new double[k];
+            ids = new long[k];
+        }
+
+        private double top() {
+            return keys[0];
+        }
+
+        private void offer(double key, long id) {
+            if (size < keys.length) {
+                // 上浮
+                int i = size++;
+                while (i > 0 && keys[(i - 1) / 2] < key) {
+                    keys[i] = keys[(i - 1) / 2];
+                    ids[i] = ids[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                keys[i] = key;
+                ids[i] = id;
+            } else if (key < keys[0]) {
+                // 替换堆顶并下沉
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && keys[child + 1] > keys[child]) {
+                        child++;
+                    }
+                    if (keys[child] <= key) {
+                        break;
+                    }
+                    keys[i] = keys[child];
+                    ids[i] = ids[child];
+                    i = child;
+                }
+                keys[i] = key;
+                ids[i] = id;
+            }
+        }
+
+        private List<Neighbor> toSortedList() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Double.compare(keys[a], keys[b]));
+            List<Neighbor> list = new ArrayList<>(size);
+            for (int i : order) {
+                list.add(new Neighbor(ids[i], meters(keys[i])));
+            }
+            return list;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 本地雪花算法生成唯一id，不依赖 redis
+ * 1 位符号位 + 1 位生成器标记（固定为 1）+ 40 位毫秒时间戳 + 10 位机器id + 12 位序列号
+ * 生成器标记使 id 都大于 RedisWorker 的 id（最高只用到第 61 位），同一业务前缀在两种生成器之间切换时不会生成重复id
+ * 机器id从 redis 租用时，租约到期前未续期成功则停止发号：租约过期后机器id可能被其他节点租用，继续发号会生成重复id
+ */
+@Slf4j
+public class SnowflakeIdGenerator implements IdGenerator {
+
+    /**
+     * 开始时间戳（毫秒），与 RedisWorker 相同
+     * 2025年5月11日 0点0分0秒（UTC）
+     */
+    private static final long BEGIN_TIMESTAMP = 1746921600000L;
+
+    /**
+     * 生成器标记：第 62 位固定为 1
+     */
+    public static final long GENERATOR_FLAG = 1L << 62;
+
+    /**
+     * 时间戳位数，40 位毫秒约 34 年
+     */
+    private static final int TIMESTAMP_BITS = 40;
+
+    public static final int WORKER_ID_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    public static final long MAX_WORKER_ID = (1L << WORKER_ID_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    /**
+     * 允许等待的时钟回拨毫秒数，超过后沿用上次时间戳继续发号
+     */
+    private static final long MAX_BACKWARD_MS = 5;
+
+    private volatile long workerId;
+
+    /**
+     * 是否为租用的机器id，固定配置的机器id没有租约
+     */
+    private volatile boolean leased;
+
+    /**
+     * 租约截止时间（System.nanoTime），超过后停止发号
+     */
+    private volatile long leaseDeadline;
+
+    private long lastTimestamp = -1;
+    private long sequence;
+
+    public SnowflakeIdGenerator(long workerId) {
+        checkWorkerId(workerId);
+        this.workerId = workerId;
+    }
+
+    /**
+     * 租约续期成功或重新租用机器id后调用：更新机器id和租约截止时间
+     * @param workerId 租用的机器id，与当前不同时切换
+     * @param deadlineNanos 租约截止时间（System.nanoTime）
+     */
+    public synchronized void lease(long workerId, long deadlineNanos) {
+        checkWorkerId(workerId);
+        if (workerId != this.workerId) {
+            log.warn("雪花算法机器id切换：{} -> {}", this.workerId, workerId);
+            this.workerId = workerId;
+        }
+        this.leaseDeadline = deadlineNanos;
+        this.leased = true;
+    }
+
+    private static void checkWorkerId(long workerId) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("机器id超出范围：" + workerId);
+        }
+    }
+
+    @Override
+    public Long nextId(String keyPrefix) {
+        return nextId();
+    }
+
+    public synchronized long nextId() {
+        // 0、租约已过期，停止发号
+        if (leased && System.nanoTime() - leaseDeadline > 0) {
+            throw new IllegalStateException("雪花算法机器id租约已过期，暂停发号：" + workerId);
+        }
+        long now = System.currentTimeMillis();
+        // 1、时钟回拨
+        if (now < lastTimestamp) {
+            long offset = lastTimestamp - now;
+            if (offset <= MAX_BACKWARD_MS) {
+                // 1.1、回拨较小，等待时钟追上
+                sleep(offset);
+                now = System.currentTimeMillis();
+            }
+            if (now < lastTimestamp) {
+                // 1.2、回拨较大，沿用上次时间戳，时间戳只增不减保证不重复
+                log.warn("时钟回拨 {} ms，沿用上次时间戳生成id", lastTimestamp - now);
+                now = lastTimestamp;
+            }
+        }
+
+        // 2、同一毫秒内序列号自增，用完后借用下一毫秒
+        if (now == lastTimestamp) {
+            sequence = (sequence + 1) & SEQUENCE_MASK;
+            if (sequence == 0) {
+                now = lastTimestamp + 1;
+            }
+        } else {
+            sequence = 0;
+        }
+        lastTimestamp = now;
+
+        // 3、拼接 id，时间戳超出 40 位后会覆盖生成器标记，停止发号
+        long timestamp = now - BEGIN_TIMESTAMP;
+        if (timestamp >= 1L << TIMESTAMP_BITS) {
+            throw new IllegalStateException("雪花算法时间戳超出范围：" + timestamp);
+        }
+        return GENERATOR_FLAG
+                | timestamp << (WORKER_ID_BITS + SEQUENCE_BITS)
+                | workerId << SEQUENCE_BITS
+                | sequence;
+    }
+
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
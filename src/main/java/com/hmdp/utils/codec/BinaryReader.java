@@ -0,0 +1,71 @@
+package com.hmdp.utils.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * 二进制读取，与 BinaryWriter 对应
+ */
+public class BinaryReader {
+
+    private final byte[] buf;
+
+    private int pos;
+
+    public BinaryReader(byte[] buf, int pos) {
+        this.buf = buf;
+        this.pos = pos;
+    }
+
+    public int readByte() {
+        return buf[pos++] & 0xFF;
+    }
+
+    public int readShort() {
+        return (readByte() << 8) | readByte();
+    }
+
+    public long readLong() {
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v = (v << 8) | (buf[pos++] & 0xFF);
+        }
+        return v;
+    }
+
+    public long readVarLong() {
+        long zigzag = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf[pos++];
+            zigzag |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    public double readDouble() {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    public String readString() {
+        int length = (int) readVarLong();
+        String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+        pos += length;
+        return s;
+    }
+
+    public LocalDateTime readDateTime() {
+        long epochSecond = readVarLong();
+        int nano = (int) readVarLong();
+        return LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC);
+    }
+
+    public String readRemainingString() {
+        String s = new String(buf, pos, buf.length - pos, StandardCharsets.UTF_8);
+        pos = buf.length;
+        return s;
+    }
+}
@@ -0,0 +1,23 @@
+package com.hmdp.utils.codec;
+
+/**
+ * 缓存值编码器 SPI：将某个类型的对象编码为二进制，注册为 spring bean 后 CacheClient 自动使用
+ * 未注册编码器的类型使用 JSON 编码
+ */
+public interface CacheCodec<T> {
+
+    /**
+     * 编码标识，写入缓存值头部；编码格式不兼容地变更时必须换一个新的标识，旧值会被当作缓存未命中重新加载
+     * 0、1 已被占用（空值、JSON）
+     */
+    byte id();
+
+    /**
+     * 支持的类型
+     */
+    Class<T> type();
+
+    void encode(T value, BinaryWriter writer);
+
+    T decode(BinaryReader reader);
+}
@@ -0,0 +1,103 @@
+package com.hmdp.utils.codec;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.entity.RedisData;
+
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 缓存值序列化
+ * 格式：魔数(1) + 编码标识(1) + 逻辑过期时间 epoch 毫秒(8) + 编码后的数据
+ * 空值标记（缓存穿透）为空字节数组；不以魔数开头的值为旧版本写入的 JSON，兼容读取
+ */
+public class CacheSerializer {
+
+    private static final byte MAGIC = (byte) 0xC5;
+
+    private static final byte NULL_ID = 0;
+
+    /**
+     * 各类型的编码器，未注册的类型使用 JSON
+     */
+    private final Map<Class<?>, CacheCodec<?>> codecs = new ConcurrentHashMap<>();
+
+    public void register(CacheCodec<?> codec) {
+        if (codec.id() == NULL_ID || codec.id() == JsonCacheCodec.ID) {
+            throw new IllegalArgumentException("编码标识已被占用：" + codec.id());
+        }
+        codecs.put(codec.type(), codec);
+    }
+
+    @SuppressWarnings("unchecked")
+    public byte[] serialize(Object value, long expireAt) {
+        BinaryWriter writer = new BinaryWriter(256);
+        writer.writeByte(MAGIC);
+        if (value == null) {
+            writer.writeByte(NULL_ID);
+            writer.writeLong(expireAt);
+            return writer.toByteArray();
+        }
+        CacheCodec<Object> codec = (CacheCodec<Object>) codecFor(value.getClass());
+        writer.writeByte(codec.id());
+        writer.writeLong(expireAt);
+        codec.encode(value, writer);
+        return writer.toByteArray();
+    }
+
+    /**
+     * 解码，返回 null 表示该值无法按当前编码读取（编码已变更），应当作缓存未命中
+     */
+    public <T> CacheValue deserialize(byte[] bytes, Class<T> type) {
+        // 1、旧版本 JSON
+        if (bytes[0] != MAGIC) {
+            return deserializeJson(new String(bytes, StandardCharsets.UTF_8), type);
+        }
+        // 2、头部
+        BinaryReader reader = new BinaryReader(bytes, 1);
+        byte id = (byte) reader.readByte();
+        long expireAt = reader.readLong();
+        if (id == NULL_ID) {
+            return new CacheValue(null, expireAt);
+        }
+        // 3、数据：按当前编码读取；注册二进制编码之前写入的 JSON 值仍可读取
+        CacheCodec<T> codec = codecFor(type);
+        if (codec.id() == id) {
+            return new CacheValue(codec.decode(reader), expireAt);
+        }
+        if (id == JsonCacheCodec.ID) {
+            return new CacheValue(new JsonCacheCodec<>(type).decode(reader), expireAt);
+        }
+        return null;
+    }
+
+    /**
+     * 只读取头部的逻辑过期时间，空值、旧版本 JSON 返回 -1
+     */
+    public static long readExpireAt(byte[] bytes) {
+        if (bytes == null || bytes.length == 0 || bytes[0] != MAGIC) {
+            return -1;
+        }
+        return new BinaryReader(bytes, 2).readLong();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CacheCodec<T> codecFor(Class<T> type) {
+        return (CacheCodec<T>) codecs.computeIfAbsent(type, JsonCacheCodec::new);
+    }
+
+    // 旧格式：普通对象的 JSON，或逻辑过期的 RedisData JSON
+    private <T> CacheValue deserializeJson(String json, Class<T> type) {
+        JSONObject jsonObject = JSONUtil.parseObj(json);
+        if (jsonObject.containsKey("expireTime") && jsonObject.containsKey("data")) {
+            RedisData redisData = jsonObject.toBean(RedisData.class);
+            Object data = redisData.getData() == null ? null : JSONUtil.toBean((JSONObject) redisData.getData(), type);
+            long expireAt = redisData.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            return new CacheValue(data, expireAt);
+        }
+        return new CacheValue(jsonObject.toBean(type), 0);
+    }
+}
@@ -0,0 +1,22 @@
+package com.hmdp.utils.codec;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 解码后的缓存值
+ */
+@Data
+@AllArgsConstructor
+public class CacheValue {
+
+    /**
+     * 缓存的对象，可能为 null（逻辑过期时数据库中不存在）
+     */
+    private Object data;
+
+    /**
+     * 逻辑过期时间（epoch 毫秒），0 表示没有逻辑过期
+     */
+    private long expireAt;
+}
@@ -0,0 +1,39 @@
+package com.hmdp.utils.codec;
+
+import cn.hutool.json.JSONUtil;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 默认编码：JSON
+ */
+public class JsonCacheCodec<T> implements CacheCodec<T> {
+
+    public static final byte ID = 1;
+
+    private final Class<T> type;
+
+    public JsonCacheCodec(Class<T> type) {
+        this.type = type;
+    }
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public Class<T> type() {
+        return type;
+    }
+
+    @Override
+    public void encode(T value, BinaryWriter writer) {
+        writer.writeBytes(JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public T decode(BinaryReader reader) {
+        return JSONUtil.toBean(reader.readRemainingString(), type);
+    }
+}
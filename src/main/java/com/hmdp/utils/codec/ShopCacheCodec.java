@@ -0,0 +1,78 @@
+package com.hmdp.utils.codec;
+
+import com.hmdp.entity.Shop;
+import org.springframework.stereotype.Component;
+
+/**
+ * 商铺的二进制编码：2 字节非空标记 + 各非空字段
+ * 字段按声明顺序写入，新增字段需要追加到末尾并更换 id
+ * distance 为查询时计算的距离，不写入缓存
+ */
+@Component
+public class ShopCacheCodec implements CacheCodec<Shop> {
+
+    public static final byte ID = 2;
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public Class<Shop> type() {
+        return Shop.class;
+    }
+
+    @Override
+    public void encode(Shop shop, BinaryWriter writer) {
+        // 1、非空标记，第 i 位为 1 表示第 i 个字段非空
+        int mask = 0;
+        Object[] fields = {shop.getId(), shop.getName(), shop.getTypeId(), shop.getImages(), shop.getArea(),
+                shop.getAddress(), shop.getX(), shop.getY(), shop.getAvgPrice(), shop.getSold(),
+                shop.getComments(), shop.getScore(), shop.getOpenHours(), shop.getCreateTime(), shop.getUpdateTime()};
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] != null) {
+                mask |= 1 << i;
+            }
+        }
+        writer.writeShort(mask);
+        // 2、非空字段
+        if (shop.getId() != null) writer.writeVarLong(shop.getId());
+        if (shop.getName() != null) writer.writeString(shop.getName());
+        if (shop.getTypeId() != null) writer.writeVarLong(shop.getTypeId());
+        if (shop.getImages() != null) writer.writeString(shop.getImages());
+        if (shop.getArea() != null) writer.writeString(shop.getArea());
+        if (shop.getAddress() != null) writer.writeString(shop.getAddress());
+        if (shop.getX() != null) writer.writeDouble(shop.getX());
+        if (shop.getY() != null) writer.writeDouble(shop.getY());
+        if (shop.getAvgPrice() != null) writer.writeVarLong(shop.getAvgPrice());
+        if (shop.getSold() != null) writer.writeVarLong(shop.getSold());
+        if (shop.getComments() != null) writer.writeVarLong(shop.getComments());
+        if (shop.getScore() != null) writer.writeVarLong(shop.getScore());
+        if (shop.getOpenHours() != null) writer.writeString(shop.getOpenHours());
+        if (shop.getCreateTime() != null) writer.writeDateTime(shop.getCreateTime());
+        if (shop.getUpdateTime() != null) writer.writeDateTime(shop.getUpdateTime());
+    }
+
+    @Override
+    public Shop decode(BinaryReader reader) {
+        int mask = reader.readShort();
+        Shop shop = new Shop();
+        if ((mask & 1) != 0) shop.setId(reader.readVarLong());
+        if ((mask & 1 << 1) != 0) shop.setName(reader.readString());
+        if ((mask & 1 << 2) != 0) shop.setTypeId(reader.readVarLong());
+        if ((mask & 1 << 3) != 0) shop.setImages(reader.readString());
+        if ((mask & 1 << 4) != 0) shop.setArea(reader.readString());
+        if ((mask & 1 << 5) != 0) shop.setAddress(reader.readString());
+        if ((mask & 1 << 6) != 0) shop.setX(reader.readDouble());
+        if ((mask & 1 << 7) != 0) shop.setY(reader.readDouble());
+        if ((mask & 1 << 8) != 0) shop.setAvgPrice(reader.readVarLong());
+        if ((mask & 1 << 9) != 0) shop.setSold((int) reader.readVarLong());
+        if ((mask & 1 << 10) != 0) shop.setComments((int) reader.readVarLong());
+        if ((mask & 1 << 11) != 0) shop.setScore((int) reader.readVarLong());
+        if ((mask & 1 << 12) != 0) shop.setOpenHours(reader.readString());
+        if ((mask & 1 << 13) != 0) shop.setCreateTime(reader.readDateTime());
+        if ((mask & 1 << 14) != 0) shop.setUpdateTime(reader.readDateTime());
+        return shop;
+    }
+}
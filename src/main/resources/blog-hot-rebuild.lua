@@ -0,0 +1,23 @@
+-- 热门博客排行重建：一批博客的热度直接写入 blog:hot，与 like.lua 的 ZINCRBY 互斥执行，重建期间的点赞不会丢失
+-- 点赞数以点赞用户 zset 的元素个数为准（已包含未写回数据库的点赞），点赞 zset 不存在时使用数据库中的点赞数
+
+-- 1、数据 key
+-- 1.1、热门博客排行 zset
+local hotKey = KEYS[1]
+-- 1.2、KEYS[i + 1]：第 i 篇博客的点赞用户 zset
+
+-- 2、参数列表：每篇博客 3 个参数
+-- ARGV[3i - 2]：博客 id
+-- ARGV[3i - 1]：数据库中的点赞数
+-- ARGV[3i]：热度的时间项
+
+-- 3、脚本业务
+for i = 1, #KEYS - 1 do
+    local likedKey = KEYS[i + 1]
+    local liked = tonumber(ARGV[3 * i - 1])
+    if (redis.call('exists', likedKey) == 1) then
+        liked = redis.call('zcard', likedKey)
+    end
+    redis.call('zadd', hotKey, liked + tonumber(ARGV[3 * i]), ARGV[3 * i - 2])
+end
+return #KEYS - 1
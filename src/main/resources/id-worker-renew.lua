@@ -0,0 +1,17 @@
+-- 雪花算法机器id续期：租约仍属于当前节点（token 相同）才延长过期时间，GET 与 PEXPIRE 原子执行
+-- 返回 1 续期成功；0 租约已丢失（已过期或被其他节点租用）
+
+-- 1、参数列表
+-- 1.1、当前节点的租约 token
+local token = ARGV[1]
+-- 1.2、租约有效期（毫秒）
+local ttl = ARGV[2]
+
+-- 2、数据 key：id:worker:{机器id}
+local workerKey = KEYS[1]
+
+-- 3、脚本业务
+if (redis.call('get', workerKey) == token) then
+    return redis.call('pexpire', workerKey, ttl)
+end
+return 0
@@ -0,0 +1,19 @@
+-- 点赞数校正：上一次写回中断时，按点赞 zset 的元素个数校正快照中的博客
+-- 读取元素个数的同时删除这些博客在新增量 hash 中的增量（元素个数已包含这些点赞），两步原子执行，避免校正后再次累加同一批增量
+-- 返回每篇博客的点赞数，与 ARGV 顺序相同
+
+-- 1、数据 key
+-- 1.1、点赞数增量 hash（上一次写回之后的新增量）
+local deltaKey = KEYS[1]
+-- 1.2、KEYS[i + 1]：第 i 篇博客的点赞用户 zset
+
+-- 2、参数列表
+-- ARGV[i]：第 i 篇博客的 id
+
+-- 3、脚本业务
+local counts = {}
+for i = 1, #ARGV do
+    counts[i] = redis.call('zcard', KEYS[i + 1])
+    redis.call('hdel', deltaKey, ARGV[i])
+end
+return counts
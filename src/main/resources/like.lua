@@ -0,0 +1,38 @@
+-- 点赞 / 取消点赞：判断是否点过赞并切换，同时更新热度排行，点赞数的变化累加到增量 hash，由 BlogLikeFlusher 定时写回数据库
+-- 返回 {是否点赞（1 / 0）, 最新点赞数}
+
+-- 1、参数列表
+-- 1.1、用户 id
+local userId = ARGV[1]
+-- 1.2、当前时间（毫秒时间戳），作为点赞 zset 的 score
+local now = ARGV[2]
+-- 1.3、博客 id
+local blogId = ARGV[3]
+
+-- 2、数据 key
+-- 2.1、博客的点赞用户 zset
+local likedKey = KEYS[1]
+-- 2.2、点赞数增量 hash：博客 id -> 增量
+local deltaKey = KEYS[2]
+-- 2.3、热门博客排行 zset
+local hotKey = KEYS[3]
+
+-- 3、脚本业务
+local isLike = 1
+local delta = 1
+if (redis.call('zscore', likedKey, userId) == false) then
+    -- 3.1、未点过赞：点赞
+    redis.call('zadd', likedKey, now, userId)
+else
+    -- 3.2、已点过赞：取消点赞
+    redis.call('zrem', likedKey, userId)
+    isLike = 0
+    delta = -1
+end
+-- 3.3、累加点赞数增量
+redis.call('hincrby', deltaKey, blogId, delta)
+-- 3.4、热度 ±1（只更新已在排行中的博客，排行未建立时不写入）
+if (redis.call('zscore', hotKey, blogId) ~= false) then
+    redis.call('zincrby', hotKey, delta, blogId)
+end
+return {isLike, redis.call('zcard', likedKey)}
@@ -11,32 +11,49 @@ local voucherId = ARGV[1]
 local userId = ARGV[2]
 -- 1.3、订单 id
 local orderId = ARGV[3]
+-- 1.4、当前时间（毫秒时间戳）
+local now = tonumber(ARGV[4])
 
--- 2、数据 key
+-- 2、数据 key（分段库存模式下为某一个分段的 key）
 -- 2.1、库存 key
-local stockKey = 'seckill:stock:' .. voucherId
+local stockKey = KEYS[1]
 -- 2.2、订单 key
-local orderKey = 'seckill:order:' .. voucherId
+local orderKey = KEYS[2]
+-- 2.3、秒杀信息 key（hash：beginTime、endTime）
+local voucherKey = KEYS[3]
+-- 2.4、订单 stream（分段模式下与分段的其他 key 使用同一个 hash tag，集群下不会跨 slot）
+local streamKey = KEYS[4]
 
 -- 3、脚本业务
--- 3.1、判断库存是否充足 get stockKey
-if (tonumber(redis.call('get',stockKey)) <= 0) then
-    -- 3.2、库存不足，返回 1
-    return 1
+-- 3.0、判断秒杀时间，未写入秒杀信息的优惠券不做校验
+local times = redis.call('hmget', voucherKey, 'beginTime', 'endTime')
+if (times[1] and now < tonumber(times[1])) then
+    -- 秒杀未开始，返回 3
+    return 3
+end
+if (times[2] and now > tonumber(times[2])) then
+    -- 秒杀已结束，返回 4
+    return 4
 end
 
--- 3.3、判断用户是否下过单
+-- 3.1、判断用户是否下过单（先于库存判断，分段模式下才能在已售罄的分段中发现重复下单）
 if (redis.call('sismember',orderKey,userId) == 1) then
-    -- 3.4、存在，说明重复下单，返回 2
+    -- 3.2、存在，说明重复下单，返回 2
     return 2
 end
 
+-- 3.3、判断库存是否充足 get stockKey
+if (tonumber(redis.call('get',stockKey)) <= 0) then
+    -- 3.4、库存不足，返回 1
+    return 1
+end
+
 -- 3.5、扣库存 incrby stockKey -1
 redis.call('incrby',stockKey,-1)
 -- 3.6、下单（保存用户）
 redis.call('sadd',orderKey,userId)
 -- 3.7、发送信息到消息队列中
-redis.call('xadd','stream.orders','*','userId',userId,'voucherId',voucherId,'id',orderId)
+redis.call('xadd',streamKey,'*','userId',userId,'voucherId',voucherId,'id',orderId)
 return 0
 
 
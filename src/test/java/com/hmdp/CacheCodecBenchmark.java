@@ -0,0 +1,134 @@
+package com.hmdp;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.entity.RedisData;
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.codec.CacheSerializer;
+import com.hmdp.utils.codec.CacheValue;
+import com.hmdp.utils.codec.ShopCacheCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 逻辑过期商铺缓存的编码对比：旧的 RedisData + JSON vs 二进制头部 + ShopCacheCodec / JSON 编码
+ * 输出每种编码写入 redis 的字节数，以及编码、解码的 ns/op
+ *
+ * mvn test-compile && java -cp "target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)" com.hmdp.CacheCodecBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheCodecBenchmark {
+
+    private Shop shop;
+
+    private long expireAt;
+
+    private CacheSerializer binarySerializer;
+
+    private CacheSerializer jsonSerializer;
+
+    private String legacyJson;
+
+    private byte[] binaryBytes;
+
+    private byte[] jsonBytes;
+
+    @Setup
+    public void setup() {
+        shop = sampleShop();
+        expireAt = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(30);
+        binarySerializer = new CacheSerializer();
+        binarySerializer.register(new ShopCacheCodec());
+        jsonSerializer = new CacheSerializer();
+        legacyJson = legacyEncode();
+        binaryBytes = binarySerializer.serialize(shop, expireAt);
+        jsonBytes = jsonSerializer.serialize(shop, expireAt);
+    }
+
+    @Benchmark
+    public String legacyJsonEncode() {
+        return legacyEncode();
+    }
+
+    @Benchmark
+    public Shop legacyJsonDecode() {
+        // 与原 queryWithLogicalExpire 相同：先解析 RedisData，再把 data 从 JSONObject 转为 Shop
+        RedisData redisData = JSONUtil.toBean(legacyJson, RedisData.class);
+        return JSONUtil.toBean((JSONObject) redisData.getData(), Shop.class);
+    }
+
+    @Benchmark
+    public byte[] jsonCodecEncode() {
+        return jsonSerializer.serialize(shop, expireAt);
+    }
+
+    @Benchmark
+    public CacheValue jsonCodecDecode() {
+        return jsonSerializer.deserialize(jsonBytes, Shop.class);
+    }
+
+    @Benchmark
+    public byte[] binaryCodecEncode() {
+        return binarySerializer.serialize(shop, expireAt);
+    }
+
+    @Benchmark
+    public CacheValue binaryCodecDecode() {
+        return binarySerializer.deserialize(binaryBytes, Shop.class);
+    }
+
+    private String legacyEncode() {
+        RedisData redisData = new RedisData();
+        redisData.setData(shop);
+        redisData.setExpireTime(LocalDateTime.now().plusMinutes(30));
+        return JSONUtil.toJsonStr(redisData);
+    }
+
+    private static Shop sampleShop() {
+        Shop shop = new Shop();
+        shop.setId(1L);
+        shop.setName("103茶餐厅");
+        shop.setTypeId(1L);
+        shop.setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg,https://qcloud.dpfile.com/pc/IOf6VX3qaBgFXFVgp75w-KKJmWZjFc8GXDU8g9bQC6YGCpAmG00QbfT4vCCBj7njuzFvxlbkWx5uwqY2qcjixFEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vmIU_8ZGOT1OjpJmLxG6urQ.jpg");
+        shop.setArea("大关");
+        shop.setAddress("金华路锦昌文华苑29号");
+        shop.setX(120.149192);
+        shop.setY(30.316078);
+        shop.setAvgPrice(80L);
+        shop.setSold(4215);
+        shop.setComments(3035);
+        shop.setScore(37);
+        shop.setOpenHours("10:00-22:00");
+        shop.setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39));
+        shop.setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+        return shop;
+    }
+
+    public static void main(String[] args) throws Exception {
+        CacheCodecBenchmark benchmark = new CacheCodecBenchmark();
+        benchmark.setup();
+        System.out.println("旧 RedisData + JSON：" + benchmark.legacyJson.getBytes(StandardCharsets.UTF_8).length + " 字节");
+        System.out.println("二进制头部 + JSON：" + benchmark.jsonBytes.length + " 字节");
+        System.out.println("二进制头部 + ShopCacheCodec：" + benchmark.binaryBytes.length + " 字节");
+        new Runner(new OptionsBuilder().include(CacheCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
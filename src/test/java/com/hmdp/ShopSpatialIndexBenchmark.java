@@ -0,0 +1,179 @@
+package com.hmdp;
+
+import com.hmdp.utils.ShopSpatialIndex;
+import io.lettuce.core.GeoArgs;
+import io.lettuce.core.GeoWithin;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 附近商铺查询对比：本地空间索引 vs redis GEO（GEORADIUS）
+ * 100 万个随机商铺，10 个类型，分布在杭州市区（经度 120.0 ~ 120.4，纬度 30.1 ~ 30.4）；每次查询随机一个坐标，半径 5 公里取最近 10 个
+ * 指定 -Dredis.uri=redis://127.0.0.1:6379/15 时同时测试 GEO，测试数据写入 bench:shop:geo:{typeId}，结束后删除
+ *
+ * mvn test-compile && java -Dredis.uri=redis://127.0.0.1:6379/15 -cp "target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)" com.hmdp.ShopSpatialIndexBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class ShopSpatialIndexBenchmark {
+
+    private static final int SHOPS = 1_000_000;
+
+    private static final int TYPES = 10;
+
+    private static final double RADIUS_METERS = 5000;
+
+    private static final int LIMIT = 10;
+
+    private static final String GEO_KEY = "bench:shop:geo:";
+
+    private ShopSpatialIndex index;
+
+    private RedisClient redisClient;
+
+    private StatefulRedisConnection<String, String> connection;
+
+    private RedisCommands<String, String> redis;
+
+    private final Random random = new Random();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        index = new ShopSpatialIndex();
+        String redisUri = System.getProperty("redis.uri");
+        if (redisUri != null) {
+            redisClient = RedisClient.create(redisUri);
+            connection = redisClient.connect();
+            redis = connection.sync();
+        }
+        Random data = new Random(42);
+        List<Object> batch = new ArrayList<>();
+        for (int type = 1; type <= TYPES; type++) {
+            for (long id = type; id <= SHOPS; id += TYPES) {
+                double x = 120.0 + data.nextDouble() * 0.4;
+                double y = 30.1 + data.nextDouble() * 0.3;
+                index.put(id, type, x, y);
+                if (redis != null) {
+                    batch.add(x);
+                    batch.add(y);
+                    batch.add(String.valueOf(id));
+                    if (batch.size() == 3000) {
+                        redis.geoadd(GEO_KEY + type, batch.toArray());
+                        batch.clear();
+                    }
+                }
+            }
+            if (redis != null && !batch.isEmpty()) {
+                redis.geoadd(GEO_KEY + type, batch.toArray());
+                batch.clear();
+            }
+        }
+        index.setReady(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (redis != null) {
+            for (int type = 1; type <= TYPES; type++) {
+                redis.del(GEO_KEY + type);
+            }
+            connection.close();
+            redisClient.shutdown();
+        }
+    }
+
+    @Benchmark
+    public List<ShopSpatialIndex.Neighbor> indexRadius() {
+        return index.radius(randomType(), randomX(), randomY(), RADIUS_METERS, LIMIT);
+    }
+
+    @Benchmark
+    public List<ShopSpatialIndex.Neighbor> indexNearest() {
+        return index.nearest(randomType(), randomX(), randomY(), LIMIT);
+    }
+
+    @Benchmark
+    public List<GeoWithin<String>> geoRadius() {
+        if (redis == null) {
+            return null;
+        }
+        return redis.georadius(GEO_KEY + randomType(), randomX(), randomY(), RADIUS_METERS, GeoArgs.Unit.m,
+                new GeoArgs().withDistance().asc().withCount(LIMIT));
+    }
+
+    private int randomType() {
+        return 1 + random.nextInt(TYPES);
+    }
+
+    private double randomX() {
+        return 120.0 + random.nextDouble() * 0.4;
+    }
+
+    private double randomY() {
+        return 30.1 + random.nextDouble() * 0.3;
+    }
+
+    public static void main(String[] args) throws Exception {
+        // 正确性：与暴力扫描的结果比较（误差 1 毫米以内）
+        ShopSpatialIndex index = new ShopSpatialIndex();
+        Random random = new Random(7);
+        int n = 20000;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = 120.0 + random.nextDouble() * 0.4;
+            ys[i] = 30.1 + random.nextDouble() * 0.3;
+            index.put(i, 1, xs[i], ys[i]);
+        }
+        for (int q = 0; q < 100; q++) {
+            double x = 120.0 + random.nextDouble() * 0.4;
+            double y = 30.1 + random.nextDouble() * 0.3;
+            double[] distances = new double[n];
+            for (int i = 0; i < n; i++) {
+                distances[i] = ShopSpatialIndex.distance(x, y, xs[i], ys[i]);
+            }
+            Arrays.sort(distances);
+            List<ShopSpatialIndex.Neighbor> nearest = index.nearest(1, x, y, LIMIT);
+            List<ShopSpatialIndex.Neighbor> radius = index.radius(1, x, y, RADIUS_METERS, LIMIT);
+            for (int i = 0; i < LIMIT; i++) {
+                if (Math.abs(nearest.get(i).getDistance() - distances[i]) > 1e-3
+                        || Math.abs(radius.get(i).getDistance() - distances[i]) > 1e-3) {
+                    throw new IllegalStateException("结果与暴力扫描不一致：" + x + "," + y);
+                }
+            }
+        }
+        System.out.println("k 近邻、半径查询与暴力扫描结果一致");
+        OptionsBuilder options = new OptionsBuilder();
+        options.include(ShopSpatialIndexBenchmark.class.getSimpleName() + ".index");
+        if (System.getProperty("redis.uri") != null) {
+            options.include(ShopSpatialIndexBenchmark.class.getSimpleName() + ".geo");
+            options.jvmArgsAppend("-Dredis.uri=" + System.getProperty("redis.uri"));
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,191 @@
+package com.hmdp;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.extension.spring.MybatisSqlSessionFactoryBean;
+import com.hmdp.entity.Blog;
+import com.hmdp.mapper.BlogMapper;
+import com.hmdp.utils.BlogLikeFlusher;
+import io.lettuce.core.RedisURI;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKE_DELTA_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKE_FLUSHING_KEY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 点赞数写回：写回快照的中途宕机，重启后校正，校正前后的点赞都只计入一次
+ * 需要本地 redis（数据库由 H2 代替），测试会清空 blog:like:*、blog:liked:{1~3}
+ *
+ * mvn test -Dtest=TestBlogLikeFlusher -Dredis.uri=redis://127.0.0.1:6379/15
+ */
+@EnabledIfSystemProperty(named = "redis.uri", matches = ".+")
+public class TestBlogLikeFlusher {
+
+    private static final List<Long> BLOG_IDS = Arrays.asList(1L, 2L, 3L);
+
+    private static final DefaultRedisScript<List> LIKE_SCRIPT;
+    static {
+        LIKE_SCRIPT = new DefaultRedisScript<>();
+        LIKE_SCRIPT.setLocation(new ClassPathResource("like.lua"));
+        LIKE_SCRIPT.setResultType(List.class);
+    }
+
+    private static LettuceConnectionFactory connectionFactory;
+
+    private static StringRedisTemplate stringRedisTemplate;
+
+    private static RedissonClient redissonClient;
+
+    private static BlogMapper blogMapper;
+
+    @BeforeAll
+    static void init() throws Exception {
+        // 1、redis
+        RedisURI redisURI = RedisURI.create(System.getProperty("redis.uri"));
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(redisURI.getHost(), redisURI.getPort());
+        configuration.setDatabase(redisURI.getDatabase());
+        if (redisURI.getPassword() != null) {
+            configuration.setPassword(redisURI.getPassword());
+        }
+        connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+        stringRedisTemplate.afterPropertiesSet();
+        Config config = new Config();
+        config.useSingleServer()
+                .setAddress("redis://" + redisURI.getHost() + ":" + redisURI.getPort())
+                .setDatabase(redisURI.getDatabase())
+                .setPassword(redisURI.getPassword() == null ? null : new String(redisURI.getPassword()));
+        redissonClient = Redisson.create(config);
+
+        // 2、H2 内存数据库，MySQL 模式
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:blog_like;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Connection connection = dataSource.getConnection()) {
+            ScriptUtils.executeSqlScript(connection, new ClassPathResource("db/schema-h2.sql"));
+        }
+        MybatisConfiguration mybatisConfiguration = new MybatisConfiguration();
+        mybatisConfiguration.addMapper(BlogMapper.class);
+        MybatisSqlSessionFactoryBean factoryBean = new MybatisSqlSessionFactoryBean();
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setConfiguration(mybatisConfiguration);
+        blogMapper = new SqlSessionTemplate(factoryBean.getObject()).getMapper(BlogMapper.class);
+    }
+
+    @AfterAll
+    static void destroy() {
+        clearRedis();
+        redissonClient.shutdown();
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void testReconcileAfterCrashMidSnapshot() {
+        clearRedis();
+        for (Long id : BLOG_IDS) {
+            // 自增主键，新建的表从 1 开始
+            Blog blog = new Blog();
+            blog.setShopId(1L);
+            blog.setUserId(1L);
+            blog.setTitle("blog " + id);
+            blog.setImages("");
+            blog.setContent("");
+            blog.setLiked(0);
+            blogMapper.insert(blog);
+            assertEquals(id, blog.getId());
+        }
+
+        // 1、点赞：博客 1 三个赞，博客 2 两个赞，博客 3 一个赞
+        like(1L, 101, 102, 103);
+        like(2L, 201, 202);
+        like(3L, 301);
+
+        // 2、写回快照时宕机：第一篇博客更新后抛出异常，其余博客留在快照 blog:like:flushing 中
+        AtomicInteger updates = new AtomicInteger();
+        BlogMapper crashingMapper = (BlogMapper) Proxy.newProxyInstance(BlogMapper.class.getClassLoader(),
+                new Class[]{BlogMapper.class}, (proxy, method, args) -> {
+                    if ("update".equals(method.getName()) && updates.incrementAndGet() > 1) {
+                        throw new IllegalStateException("模拟宕机");
+                    }
+                    try {
+                        return method.invoke(blogMapper, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        assertThrows(IllegalStateException.class, () -> flusher(crashingMapper).flush());
+        assertEquals(2L, stringRedisTemplate.opsForHash().size(BLOG_LIKE_FLUSHING_KEY));
+
+        // 3、重启前继续点赞，写入新的增量：博客 1、2 各加赞，博客 3 取消点赞
+        like(1L, 104);
+        like(2L, 203, 204);
+        like(3L, 301);
+
+        // 4、重启后写回：先校正快照中的博客，再写回新增量
+        BlogLikeFlusher flusher = flusher(blogMapper);
+        flusher.flush();
+        flusher.flush();
+
+        // 5、数据库点赞数与点赞 zset 一致，没有重复累加
+        assertFalse(Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_LIKE_FLUSHING_KEY)));
+        assertFalse(Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_LIKE_DELTA_KEY)));
+        assertEquals(4, likedInDb(1L));
+        assertEquals(4, likedInDb(2L));
+        assertEquals(0, likedInDb(3L));
+        for (Long id : BLOG_IDS) {
+            assertEquals(stringRedisTemplate.opsForZSet().zCard(BLOG_LIKED_KEY + id).intValue(), likedInDb(id));
+        }
+    }
+
+    private static BlogLikeFlusher flusher(BlogMapper mapper) {
+        BlogLikeFlusher flusher = new BlogLikeFlusher();
+        ReflectionTestUtils.setField(flusher, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(flusher, "redissonClient", redissonClient);
+        ReflectionTestUtils.setField(flusher, "blogMapper", mapper);
+        return flusher;
+    }
+
+    // 与 likeBlog 相同：执行 like.lua，已点过赞则取消
+    private static void like(Long blogId, long... userIds) {
+        for (long userId : userIds) {
+            stringRedisTemplate.execute(LIKE_SCRIPT,
+                    Arrays.asList(BLOG_LIKED_KEY + blogId, BLOG_LIKE_DELTA_KEY, BLOG_HOT_KEY),
+                    String.valueOf(userId), String.valueOf(System.currentTimeMillis()), blogId.toString());
+        }
+    }
+
+    private static int likedInDb(Long blogId) {
+        return blogMapper.selectById(blogId).getLiked();
+    }
+
+    private static void clearRedis() {
+        stringRedisTemplate.delete(Arrays.asList(BLOG_LIKE_DELTA_KEY, BLOG_LIKE_FLUSHING_KEY));
+        BLOG_IDS.forEach(id -> stringRedisTemplate.delete(BLOG_LIKED_KEY + id));
+    }
+}
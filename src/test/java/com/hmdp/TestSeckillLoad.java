@@ -0,0 +1,202 @@
+package com.hmdp;
+
+import com.hmdp.entity.Voucher;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.service.IVoucherService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 秒杀接口压测：启动完整应用（H2 + 本地 redis），并发用户请求 /voucher-order/seckill/{id}
+ * 输出 p50/p99 延迟、吞吐、超卖数、重复下单数
+ *
+ * mvn test -Dtest=TestSeckillLoad -Dbench.seckill=true [-Dbench.users=2000] [-Dbench.stock=200]
+ *          [-Dbench.shards=1] [-Dbench.threads=200] [-Dbench.requestsPerUser=2]
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("bench")
+@EnabledIfSystemProperty(named = "bench.seckill", matches = "true")
+public class TestSeckillLoad {
+
+    private static final int USERS = Integer.getInteger("bench.users", 2000);
+    private static final int STOCK = Integer.getInteger("bench.stock", 200);
+    private static final int SHARDS = Integer.getInteger("bench.shards", 1);
+    private static final int THREADS = Integer.getInteger("bench.threads", 200);
+    private static final int REQUESTS_PER_USER = Integer.getInteger("bench.requestsPerUser", 2);
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private IVoucherService voucherService;
+
+    @Autowired
+    private ISeckillVoucherService seckillVoucherService;
+
+    @Autowired
+    private IVoucherOrderService voucherOrderService;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Test
+    void testSeckillLoad() throws Exception {
+        // 1、创建秒杀券
+        Long voucherId = addSeckillVoucher();
+
+        // 2、准备登录用户 token
+        List<String> tokens = loginUsers();
+
+        // 3、并发下单
+        HttpClient httpClient = HttpClient.newBuilder()
+                .executor(Executors.newFixedThreadPool(THREADS))
+                .build();
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + "/voucher-order/seckill/" + voucherId))
+                .POST(HttpRequest.BodyPublishers.noBody());
+        int total = USERS * REQUESTS_PER_USER;
+        long[] latencies = new long[total];
+        AtomicInteger index = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        Map<Integer, AtomicInteger> successByUser = new ConcurrentHashMap<>();
+        ExecutorService es = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch latch = new CountDownLatch(total);
+
+        long begin = System.nanoTime();
+        for (int round = 0; round < REQUESTS_PER_USER; round++) {
+            for (int user = 0; user < USERS; user++) {
+                int userIndex = user;
+                es.submit(() -> {
+                    try {
+                        long start = System.nanoTime();
+                        HttpResponse<String> response = httpClient.send(
+                                requestBuilder.copy().header("authorization", tokens.get(userIndex)).build(),
+                                HttpResponse.BodyHandlers.ofString());
+                        latencies[index.getAndIncrement()] = System.nanoTime() - start;
+                        if (response.statusCode() == 200) {
+                            successByUser.computeIfAbsent(userIndex, k -> new AtomicInteger()).incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    } finally {
+                        latch.countDown();
+                    }
+                });
+            }
+        }
+        latch.await();
+        long costNanos = System.nanoTime() - begin;
+        es.shutdown();
+
+        // 4、等待异步落库完成
+        int successes = successByUser.values().stream().mapToInt(AtomicInteger::get).sum();
+        int orders = waitForOrders(voucherId, successes);
+
+        // 5、统计
+        long[] sorted = Arrays.copyOf(latencies, index.get());
+        Arrays.sort(sorted);
+        int stockLeft = seckillVoucherService.getById(voucherId).getStock();
+        int oversell = Math.max(0, orders - STOCK) + Math.max(0, -stockLeft);
+        long duplicateUsers = successByUser.values().stream().filter(count -> count.get() > 1).count();
+        long duplicateOrders = orders - voucherOrderService.query().eq("voucher_id", voucherId).list().stream()
+                .map(VoucherOrder::getUserId)
+                .distinct()
+                .count();
+
+        System.out.println("==================== 秒杀压测 ====================");
+        System.out.println("用户数：" + USERS + "，每人请求：" + REQUESTS_PER_USER + "，并发线程：" + THREADS
+                + "，库存：" + STOCK + "，分段：" + SHARDS);
+        System.out.println("请求数：" + sorted.length + "，失败（网络）：" + errors.get()
+                + "，吞吐：" + (sorted.length * 1_000_000_000L / costNanos) + " req/s");
+        System.out.println("延迟 p50：" + percentileMillis(sorted, 0.50) + " ms，p99："
+                + percentileMillis(sorted, 0.99) + " ms，max：" + percentileMillis(sorted, 1.0) + " ms");
+        System.out.println("下单成功：" + successes + "，订单落库：" + orders + "，剩余库存：" + stockLeft);
+        System.out.println("超卖数：" + oversell + "，重复下单数：" + (duplicateUsers + duplicateOrders));
+
+        assertEquals(0, oversell);
+        assertEquals(0, duplicateUsers + duplicateOrders);
+        assertEquals(successes, orders);
+    }
+
+    private Long addSeckillVoucher() {
+        Voucher voucher = new Voucher();
+        voucher.setShopId(1L);
+        voucher.setTitle("压测秒杀券");
+        voucher.setPayValue(100L);
+        voucher.setActualValue(200L);
+        voucher.setType(1);
+        voucher.setStock(STOCK);
+        voucher.setStockShards(SHARDS);
+        voucher.setBeginTime(LocalDateTime.now().minusHours(1));
+        voucher.setEndTime(LocalDateTime.now().plusHours(1));
+        voucherService.addSeckillVoucher(voucher);
+        return voucher.getId();
+    }
+
+    // 直接写入 redis 登录态，token 即 RefreshTokenInterceptor 读取的 authorization
+    private List<String> loginUsers() {
+        List<String> tokens = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++) {
+            tokens.add("bench-" + System.nanoTime() + "-" + i);
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < USERS; i++) {
+                byte[] key = (LOGIN_USER_KEY + tokens.get(i)).getBytes();
+                connection.hSet(key, "id".getBytes(), String.valueOf(1_000_000L + i).getBytes());
+                connection.hSet(key, "nickName".getBytes(), ("bench_" + i).getBytes());
+                connection.hSet(key, "icon".getBytes(), new byte[0]);
+                connection.expire(key, TimeUnit.MINUTES.toSeconds(30));
+            }
+            return null;
+        });
+        return tokens;
+    }
+
+    private int waitForOrders(Long voucherId, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        int orders = 0;
+        while (System.currentTimeMillis() < deadline) {
+            orders = voucherOrderService.query().eq("voucher_id", voucherId).count();
+            if (orders >= expected) {
+                break;
+            }
+            Thread.sleep(200);
+        }
+        return orders;
+    }
+
+    private static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int i = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, i)] / 1_000_000.0;
+    }
+}
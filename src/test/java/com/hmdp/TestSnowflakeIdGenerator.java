@@ -0,0 +1,113 @@
+package com.hmdp;
+
+import com.hmdp.utils.RedisWorker;
+import com.hmdp.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 雪花算法 id：多线程、多机器id 下的唯一性与吞吐
+ */
+public class TestSnowflakeIdGenerator {
+
+    private final ExecutorService es = Executors.newFixedThreadPool(32);
+
+    @Test
+    void testSnowflakeIdGenerator() throws InterruptedException {
+        int workers = 4;
+        int threadsPerWorker = 8;
+        int idsPerThread = 50_000;
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        CountDownLatch latch = new CountDownLatch(workers * threadsPerWorker);
+
+        long begin = System.currentTimeMillis();
+        for (int w = 0; w < workers; w++) {
+            // 模拟多个节点
+            SnowflakeIdGenerator generator = new SnowflakeIdGenerator(w);
+            for (int t = 0; t < threadsPerWorker; t++) {
+                es.submit(() -> {
+                    for (int i = 0; i < idsPerThread; i++) {
+                        ids.add(generator.nextId("order"));
+                    }
+                    latch.countDown();
+                });
+            }
+        }
+        latch.await();
+        long end = System.currentTimeMillis();
+
+        int total = workers * threadsPerWorker * idsPerThread;
+        System.out.println("time：" + (end - begin) + " ms，吞吐：" + (total * 1000L / Math.max(1, end - begin)) + " id/s");
+        assertEquals(total, ids.size());
+        assertTrue(ids.stream().allMatch(id -> id > 0));
+    }
+
+    @Test
+    void testIdIncreasing() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1);
+        long last = generator.nextId();
+        for (int i = 0; i < 100_000; i++) {
+            long id = generator.nextId();
+            assertTrue(id > last);
+            last = id;
+        }
+    }
+
+    @Test
+    void testStopWhenLeaseExpired() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1);
+        // 1、租约有效期内正常发号
+        generator.lease(1, System.nanoTime() + TimeUnit.MINUTES.toNanos(1));
+        assertEquals(1, (generator.nextId() >> 12) & SnowflakeIdGenerator.MAX_WORKER_ID);
+        // 2、租约过期，停止发号
+        generator.lease(1, System.nanoTime() - 1);
+        assertThrows(IllegalStateException.class, generator::nextId);
+        // 3、重新租用到其他机器id，使用新的机器id继续发号
+        generator.lease(2, System.nanoTime() + TimeUnit.MINUTES.toNanos(1));
+        assertEquals(2, (generator.nextId() >> 12) & SnowflakeIdGenerator.MAX_WORKER_ID);
+    }
+
+    @Test
+    void testDisjointFromRedisWorker() {
+        // 1、RedisWorker 的序列号由 mock 的 INCR 返回，从接近 32 位上限处开始
+        AtomicLong counter = new AtomicLong((1L << 32) - 10_000);
+        ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        when(valueOperations.increment(anyString())).thenAnswer(invocation -> counter.incrementAndGet());
+        StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        RedisWorker redisWorker = new RedisWorker();
+        ReflectionTestUtils.setField(redisWorker, "stringRedisTemplate", stringRedisTemplate);
+
+        // 2、同一时刻两种生成器的 id：RedisWorker 的 id 都小于生成器标记，雪花算法的 id 都带有生成器标记
+        SnowflakeIdGenerator snowflake = new SnowflakeIdGenerator(0);
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            long redisId = redisWorker.nextId("order");
+            long snowflakeId = snowflake.nextId();
+            assertTrue(redisId > 0 && redisId <= RedisWorker.MAX_ID);
+            assertTrue(snowflakeId >= SnowflakeIdGenerator.GENERATOR_FLAG);
+            assertTrue(ids.add(redisId));
+            assertTrue(ids.add(snowflakeId));
+        }
+        // 3、RedisWorker 能生成的最大 id 也小于雪花算法的最小 id
+        assertTrue(RedisWorker.MAX_ID < SnowflakeIdGenerator.GENERATOR_FLAG);
+    }
+}
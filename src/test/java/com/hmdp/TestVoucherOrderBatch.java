@@ -0,0 +1,207 @@
+package com.hmdp;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.spring.MybatisSqlSessionFactoryBean;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.mapper.SeckillVoucherMapper;
+import com.hmdp.mapper.VoucherOrderMapper;
+import com.hmdp.service.impl.SeckillVoucherServiceImpl;
+import com.hmdp.service.impl.VoucherOrderServiceImpl;
+import com.hmdp.utils.IdGenerator;
+import com.hmdp.utils.UserHolder;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 订单落库：逐单 createVoucherOrder vs 批量 createVoucherOrders（多值 INSERT IGNORE + 聚合 update），校验结果并对比吞吐
+ * 直接调用 VoucherOrderServiceImpl，使用 H2 内存数据库（MySQL 模式），事务由 TransactionTemplate 代替 @Transactional
+ */
+public class TestVoucherOrderBatch {
+
+    private static final int ORDER_COUNT = 5000;
+    private static final int BATCH_SIZE = 100;
+
+    private static SqlSessionTemplate sqlSessionTemplate;
+
+    private static TransactionTemplate transactionTemplate;
+
+    private static VoucherOrderServiceImpl voucherOrderService;
+
+    // 两种方式落库 ORDER_COUNT 单的耗时，都测到后输出吞吐对比
+    private static long oneByOneNanos;
+
+    private static long batchNanos;
+
+    @BeforeAll
+    static void init() throws Exception {
+        // 1、H2 内存数据库，MySQL 模式
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:voucher_order;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Connection connection = dataSource.getConnection()) {
+            ScriptUtils.executeSqlScript(connection, new ClassPathResource("db/schema-h2.sql"));
+        }
+
+        // 2、mybatis-plus 会话工厂，会话参与 spring 事务
+        MybatisConfiguration configuration = new MybatisConfiguration();
+        configuration.addMapper(SeckillVoucherMapper.class);
+        MybatisSqlSessionFactoryBean factoryBean = new MybatisSqlSessionFactoryBean();
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setConfiguration(configuration);
+        factoryBean.setMapperLocations(new PathMatchingResourcePatternResolver()
+                .getResources("classpath:mapper/VoucherOrderMapper.xml"));
+        SqlSessionFactory sqlSessionFactory = factoryBean.getObject();
+        sqlSessionTemplate = new SqlSessionTemplate(sqlSessionFactory);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        // 3、服务对象，按字段注入 mapper 和依赖
+        SeckillVoucherServiceImpl seckillVoucherService = new SeckillVoucherServiceImpl();
+        ReflectionTestUtils.setField(seckillVoucherService, "baseMapper", sqlSessionTemplate.getMapper(SeckillVoucherMapper.class));
+        AtomicLong orderId = new AtomicLong(1_000_000L);
+        voucherOrderService = new VoucherOrderServiceImpl();
+        ReflectionTestUtils.setField(voucherOrderService, "baseMapper", sqlSessionTemplate.getMapper(VoucherOrderMapper.class));
+        ReflectionTestUtils.setField(voucherOrderService, "seckillVoucherService", seckillVoucherService);
+        ReflectionTestUtils.setField(voucherOrderService, "idGenerator", (IdGenerator) prefix -> orderId.incrementAndGet());
+    }
+
+    @AfterEach
+    void removeUser() {
+        UserHolder.removeUser();
+    }
+
+    @AfterAll
+    static void compareThroughput() {
+        if (oneByOneNanos > 0 && batchNanos > 0) {
+            System.out.printf("批量落库吞吐为逐单落库的 %.1f 倍%n", (double) oneByOneNanos / batchNanos);
+        }
+    }
+
+    @Test
+    void testCreateVoucherOrderOneByOne() {
+        long voucherId = 1L;
+        saveSeckillVoucher(voucherId, ORDER_COUNT);
+
+        // 每单一个事务：一人一单查询、扣减库存、插入订单
+        long begin = System.nanoTime();
+        for (long userId = 0; userId < ORDER_COUNT; userId++) {
+            Result result = createVoucherOrderAs(userId, voucherId);
+            assertTrue(result.getSuccess());
+        }
+        oneByOneNanos = report("逐单落库", begin);
+        assertEquals(ORDER_COUNT, countOrders(voucherId));
+        assertEquals(0, queryStock(voucherId));
+
+        // 重复下单：一人一单拒绝，库存不变
+        assertFalse(createVoucherOrderAs(0L, voucherId).getSuccess());
+        assertEquals(ORDER_COUNT, countOrders(voucherId));
+        assertEquals(0, queryStock(voucherId));
+    }
+
+    @Test
+    void testCreateVoucherOrdersInBatch() {
+        long voucherId = 2L;
+        saveSeckillVoucher(voucherId, ORDER_COUNT);
+        List<VoucherOrder> orders = buildOrders(voucherId, 2_000_000L, ORDER_COUNT);
+
+        long begin = System.nanoTime();
+        int inserted = createVoucherOrders(orders);
+        batchNanos = report("批量落库", begin);
+        assertEquals(ORDER_COUNT, inserted);
+        assertEquals(ORDER_COUNT, countOrders(voucherId));
+        assertEquals(0, queryStock(voucherId));
+
+        // 重复投递：唯一索引忽略全部订单，库存不再扣减
+        assertEquals(0, createVoucherOrders(orders));
+        assertEquals(ORDER_COUNT, countOrders(voucherId));
+        assertEquals(0, queryStock(voucherId));
+    }
+
+    @Test
+    void testCreateVoucherOrdersRollbackWhenStockShort() {
+        long voucherId = 3L;
+        saveSeckillVoucher(voucherId, BATCH_SIZE - 1);
+        List<VoucherOrder> orders = buildOrders(voucherId, 3_000_000L, BATCH_SIZE);
+
+        // 数据库库存少于插入的订单数：抛出异常，订单和库存一起回滚，消息留在 pending-list 中
+        assertThrows(IllegalStateException.class, () -> createVoucherOrders(orders));
+        assertEquals(0, countOrders(voucherId));
+        assertEquals(BATCH_SIZE - 1, queryStock(voucherId));
+    }
+
+    private Result createVoucherOrderAs(long userId, long voucherId) {
+        UserDTO user = new UserDTO();
+        user.setId(userId);
+        UserHolder.saveUser(user);
+        return transactionTemplate.execute(status -> voucherOrderService.createVoucherOrder(voucherId));
+    }
+
+    // 与订单消费线程相同：每批一个事务
+    private int createVoucherOrders(List<VoucherOrder> orders) {
+        int total = 0;
+        for (int i = 0; i < orders.size(); i += BATCH_SIZE) {
+            List<VoucherOrder> batch = orders.subList(i, Math.min(i + BATCH_SIZE, orders.size()));
+            total += transactionTemplate.execute(status -> voucherOrderService.createVoucherOrders(batch));
+        }
+        return total;
+    }
+
+    private List<VoucherOrder> buildOrders(long voucherId, long firstOrderId, int count) {
+        List<VoucherOrder> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            VoucherOrder order = new VoucherOrder();
+            order.setId(firstOrderId + i);
+            order.setUserId((long) i);
+            order.setVoucherId(voucherId);
+            orders.add(order);
+        }
+        return orders;
+    }
+
+    private void saveSeckillVoucher(long voucherId, int stock) {
+        SeckillVoucher seckillVoucher = new SeckillVoucher();
+        seckillVoucher.setVoucherId(voucherId);
+        seckillVoucher.setStock(stock);
+        sqlSessionTemplate.getMapper(SeckillVoucherMapper.class).insert(seckillVoucher);
+    }
+
+    private int countOrders(long voucherId) {
+        return sqlSessionTemplate.getMapper(VoucherOrderMapper.class)
+                .selectCount(new QueryWrapper<VoucherOrder>().eq("voucher_id", voucherId));
+    }
+
+    private int queryStock(long voucherId) {
+        return sqlSessionTemplate.getMapper(SeckillVoucherMapper.class).selectById(voucherId).getStock();
+    }
+
+    private static long report(String name, long beginNanos) {
+        long costNanos = System.nanoTime() - beginNanos;
+        long costMillis = Math.max(1, costNanos / 1_000_000);
+        System.out.println(name + "：" + ORDER_COUNT + " 单，耗时 " + costMillis + " ms，吞吐 "
+                + (ORDER_COUNT * 1000L / costMillis) + " 单/秒");
+        return costNanos;
+    }
+}
@@ -9,10 +9,14 @@ import org.springframework.boot.test.context.SpringBootTest;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
 @SpringBootTest
 public class testTimeStamp {
 
@@ -43,27 +47,32 @@ public class testTimeStamp {
         System.out.println(date);
     }
 
+    /**
+     * 多线程生成 id：校验唯一性并统计吞吐
+     */
     @Test
     public void testRedisWorker() throws InterruptedException {
-
-        CountDownLatch latch = new CountDownLatch(300);
+        int threads = 300;
+        int idsPerThread = 100;
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        CountDownLatch latch = new CountDownLatch(threads);
 
         Runnable task = () -> {
-            for (int i = 0; i <100; i++) {
-                Long id = redisWorker.nextId("order");
-                System.out.println("id：" + id);
+            for (int i = 0; i <idsPerThread; i++) {
+                ids.add(redisWorker.nextId("order"));
             }
             latch.countDown();
         };
 
         long begin = System.currentTimeMillis();
-        for (int i = 0; i < 300; i++) {
+        for (int i = 0; i < threads; i++) {
             es.submit(task);
         }
 
         latch.await();
         long end = System.currentTimeMillis();
-        System.out.println("time：" + (end - begin));
+        System.out.println("time：" + (end - begin) + " ms，吞吐：" + (threads * idsPerThread * 1000L / Math.max(1, end - begin)) + " id/s");
+        assertEquals(threads * idsPerThread, ids.size());
     }
 
 }